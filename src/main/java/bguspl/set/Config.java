@@ -5,22 +5,113 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
 import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * This class holds all the game's configuration data
+ * <p>
+ * A Config is an immutable, validated snapshot: derived values are computed once here, and a configuration change
+ * creates a new snapshot (see {@link #reload(Logger, Properties)}) rather than modifying this one.
  */
 public class Config {
 
+    /**
+     * The properties that may change while a game is running: the timing the game threads read through Env.config
+     * (the user interfaces keep the snapshot they were created with). Any other change needs a restart.
+     */
+    static final String[] RELOADABLE = {"TurnTimeoutSeconds", "PointFreezeSeconds", "PenaltyFreezeSeconds",
+            "EndGamePauseSeconds", "WatchdogSeconds", "WatchdogRecover"};
+
+    /**
+     * The properties this snapshot was created from
+     */
+    private final Properties properties;
+
     /**
      * Random spin cycles for Config::randomSpin (for debugging / testing)
      */
     public final long randomSpinMin;
     public final long randomSpinMax;
 
+    /**
+     * Seed for the random spin cycles (0 for an unseeded random); with a seed every thread spins the same sequence
+     * on every run, so an interleaving found by a stress test can be replayed
+     */
+    public final long randomSpinSeed;
+
+    /**
+     * Seed for the cards the dealer draws (0 for an unseeded random); with a seed the same cards are dealt in the
+     * same order on every run
+     */
+    public final long deckSeed;
+
+    /**
+     * Whether to collect game metrics (exposed via JMX)
+     */
+    public final boolean metrics;
+
+    /**
+     * The file the metrics are periodically appended to (empty for none)
+     */
+    public final String metricsDumpFile;
+
+    /**
+     * The number of milliseconds between metrics dumps
+     */
+    public final long metricsDumpMillis;
+
+    /**
+     * The number of milliseconds a game thread may wait on a handshake without progress before the watchdog reports
+     * it as stalled (0 disables the watchdog)
+     */
+    public final long watchdogMillis;
+
+    /**
+     * Whether the watchdog should force a new turn when it finds a stall (otherwise it only reports)
+     */
+    public final boolean watchdogRecover;
+
+    /**
+     * Whether to watch the configuration file and apply timing changes between turns
+     */
+    public final boolean configHotReload;
+
+    /**
+     * Whether to run without a user interface (AWT and Swing are not even loaded)
+     */
+    public final boolean headless;
+
+    /**
+     * Whether to draw the game in the terminal when there is no window (see TerminalUserInterface)
+     */
+    public final boolean terminalUi;
+
+    /**
+     * The file the player statistics of every game are stored in (empty for none)
+     */
+    public final String statsFile;
+
+    /**
+     * The local port spectators connect to for a live feed of the game (0 for no feed, see SpectatorFeed)
+     */
+    public final int spectatorPort;
+
+    /**
+     * The file the game is checkpointed to, to be resumed later (empty for none, see GameCheckpoint)
+     */
+    public final String checkpointFile;
+
+    /**
+     * The number of milliseconds between checkpoints (0 to checkpoint only on request and when the game is stopped)
+     */
+    public final long checkpointMillis;
+
     /**
      * The number of features on the cards (e.g. shape, color etc.)
      */
@@ -51,11 +142,23 @@ public class Config {
      */
     public final int players;
 
+    /**
+     * The strategy of each computer player, by player id ("random" presses random cards, "hint" presses a legal set
+     * when there is one on the table). Human players are listed as "human".
+     */
+    public final String[] botStrategies;
+
     /**
      * Whether to print out hints to the console or not
      */
     public final boolean hints;
 
+    /**
+     * The number of card collections whose sets are remembered, shared by the games in this JVM (0 for no cache, see
+     * SetCache)
+     */
+    public final int setCacheSize;
+
     /**
      * The number of milliseconds until the dealer reshuffles the deck (0 show timer since last action, -1 show nothing)
      */
@@ -77,7 +180,8 @@ public class Config {
     public final long pointFreezeMillis;
 
     /**
-     * The number of milliseconds to delay before removing/placing a card on the table
+     * The number of milliseconds the display takes to deal or remove each card (presentation only, the table itself
+     * changes instantly)
      */
     public final long tableDelayMillis;
 
@@ -107,6 +211,11 @@ public class Config {
      */
     public final int tableSize;
 
+    /**
+     * The number of 64 bit words in a bitmap with a bit per player
+     */
+    public final int playerWords;
+
     /**
      * The width (in pixels) of each cell
      */
@@ -155,7 +264,7 @@ public class Config {
      * @param filename - the name of the configuration file.
      * @return - a properties object with the configuration file contents.
      */
-    private static Properties loadProperties(String filename, Logger logger) {
+    static Properties loadProperties(String filename, Logger logger) {
 
         Properties properties = new Properties();
 
@@ -182,6 +291,9 @@ public class Config {
 
     public Config(Logger logger, Properties properties) {
 
+        this.properties = new Properties();
+        this.properties.putAll(properties);
+
         // logger settings
         Level logLevel = Level.parse(properties.getProperty("LogLevel", "ALL"));
         String logFormat = properties.getProperty("LogFormat", "[%1$tT.%1$tL] [%2$-7s] %3$s%n");
@@ -190,9 +302,25 @@ public class Config {
         // for debugging
         randomSpinMin = Long.parseLong(properties.getProperty("RandomSpinMin", "0"));
         randomSpinMax = Long.parseLong(properties.getProperty("RandomSpinMax", "0"));
+        randomSpinSeed = Long.parseLong(properties.getProperty("RandomSpinSeed", "0"));
+        deckSeed = Long.parseLong(properties.getProperty("DeckSeed", "0"));
         if (randomSpinMax < randomSpinMin || randomSpinMin < 0)
             logger.severe("invalid random spin cycles: max: " + randomSpinMax + " min: " + randomSpinMin);
 
+        // metrics
+        metrics = Boolean.parseBoolean(properties.getProperty("Metrics", "False"));
+        metricsDumpFile = properties.getProperty("MetricsDumpFile", "./logs/metrics.txt").trim();
+        metricsDumpMillis = (long) (Double.parseDouble(properties.getProperty("MetricsDumpSeconds", "10")) * 1000.0);
+        watchdogMillis = (long) (Double.parseDouble(properties.getProperty("WatchdogSeconds", "0")) * 1000.0);
+        watchdogRecover = Boolean.parseBoolean(properties.getProperty("WatchdogRecover", "False"));
+        configHotReload = Boolean.parseBoolean(properties.getProperty("ConfigHotReload", "False"));
+        headless = Boolean.parseBoolean(properties.getProperty("Headless", "False"));
+        terminalUi = Boolean.parseBoolean(properties.getProperty("TerminalUi", "False"));
+        statsFile = properties.getProperty("StatsFile", "").trim();
+        spectatorPort = Integer.parseInt(properties.getProperty("SpectatorPort", "0"));
+        checkpointFile = properties.getProperty("CheckpointFile", "").trim();
+        checkpointMillis = (long) (Double.parseDouble(properties.getProperty("CheckpointSeconds", "0")) * 1000.0);
+
         // cards settings
         featureSize = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
         featureCount = Integer.parseInt(properties.getProperty("FeatureCount", "4"));
@@ -202,8 +330,14 @@ public class Config {
         humanPlayers = Integer.parseInt(properties.getProperty("HumanPlayers", "2"));
         computerPlayers = Integer.parseInt(properties.getProperty("ComputerPlayers", "0"));
         players = humanPlayers + computerPlayers;
+        playerWords = (players + 63) >>> 6;
+        String[] strategies = properties.getProperty("BotStrategies", "random").split(",");
+        botStrategies = new String[players];
+        Arrays.setAll(botStrategies, i -> i < humanPlayers ? "human"
+                : i - humanPlayers < strategies.length ? strategies[i - humanPlayers].trim().toLowerCase() : "random");
 
         hints = Boolean.parseBoolean(properties.getProperty("Hints", "False"));
+        setCacheSize = Integer.parseInt(properties.getProperty("SetCacheSize", "4096"));
         turnTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutSeconds", "60")) * 1000.0);
         turnTimeoutWarningMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutWarningSeconds", "60")) * 1000.0);
         pointFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PointFreezeSeconds", "1")) * 1000.0);
@@ -239,6 +373,59 @@ public class Config {
                     playerKeys[i][j] = Integer.parseInt(codes[j]);
             }
         }
+
+        validate();
+    }
+
+    /**
+     * Rejects values the game cannot run with.
+     *
+     * @throws IllegalArgumentException - listing every invalid value.
+     */
+    private void validate() {
+        List<String> problems = new ArrayList<>();
+        if (featureSize < 1) problems.add("FeatureSize must be positive: " + featureSize);
+        if (featureCount < 1) problems.add("FeatureCount must be positive: " + featureCount);
+        if (rows < 1 || columns < 1) problems.add("the table must have at least one cell: " + rows + "x" + columns);
+        if (humanPlayers < 0 || computerPlayers < 0)
+            problems.add("the number of players cannot be negative: " + humanPlayers + " + " + computerPlayers);
+        if (turnTimeoutWarningMillis < 0) problems.add("TurnTimeoutWarningSeconds cannot be negative");
+        if (pointFreezeMillis < 0 || penaltyFreezeMillis < 0) problems.add("freeze times cannot be negative");
+        if (tableDelayMillis < 0) problems.add("TableDelaySeconds cannot be negative");
+        if (endGamePauseMillies < 0) problems.add("EndGamePauseSeconds cannot be negative");
+        if (watchdogMillis < 0) problems.add("WatchdogSeconds cannot be negative");
+        if (spectatorPort < 0 || spectatorPort > 65535) problems.add("SpectatorPort is not a port: " + spectatorPort);
+        if (checkpointMillis < 0) problems.add("CheckpointSeconds cannot be negative");
+        if (setCacheSize < 0) problems.add("SetCacheSize cannot be negative");
+        if (!problems.isEmpty())
+            throw new IllegalArgumentException("invalid configuration: " + String.join("; ", problems));
+    }
+
+    /**
+     * Creates the snapshot to switch to when the configuration file changes while a game is running. Only the
+     * RELOADABLE properties are taken from the new contents, other changes are reported and ignored.
+     *
+     * @param logger     - the logger for the ignored changes.
+     * @param properties - the new contents of the configuration file.
+     * @return - the new snapshot (this one if nothing reloadable changed).
+     * @throws IllegalArgumentException - if the new values are invalid (this snapshot stays in use).
+     */
+    public Config reload(Logger logger, Properties properties) {
+        Properties merged = new Properties();
+        merged.putAll(this.properties);
+        boolean changed = false;
+        for (String key : RELOADABLE) {
+            String value = properties.getProperty(key);
+            if (Objects.equals(value, this.properties.getProperty(key))) continue;
+            if (value == null) merged.remove(key);
+            else merged.setProperty(key, value);
+            changed = true;
+        }
+        for (String key : properties.stringPropertyNames())
+            if (!Arrays.asList(RELOADABLE).contains(key)
+                    && !Objects.equals(properties.getProperty(key), this.properties.getProperty(key)))
+                logger.warning("configuration change of " + key + " needs a restart, ignored.");
+        return changed ? new Config(logger, merged) : this;
     }
 
     public int[] playerKeys(int player) {
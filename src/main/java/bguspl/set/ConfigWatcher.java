@@ -0,0 +1,106 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Properties;
+
+/**
+ * Watches the configuration file and stages a new configuration snapshot in the environment whenever the file
+ * changes. The dealer applies the staged snapshot between turns, so timing changes (e.g. turnTimeoutMillis or the
+ * freeze durations) take effect without restarting the game. Invalid changes are reported and ignored.
+ */
+public class ConfigWatcher implements Runnable {
+
+    private final Env env;
+    private final Path file;
+    private WatchService watchService;
+    private Thread thread;
+
+    /**
+     * The last snapshot created (the base for the next reload).
+     */
+    private Config current;
+
+    public ConfigWatcher(Env env, String filename) {
+        this.env = env;
+        this.file = Paths.get(filename).toAbsolutePath();
+        this.current = env.config;
+    }
+
+    /**
+     * Starts watching on a daemon thread (unless the configuration was not read from a file).
+     */
+    public void start() {
+        if (!Files.isRegularFile(file)) {
+            env.logger.info("configuration file " + file + " not found, hot reload is disabled.");
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            env.logger.severe("cannot watch configuration file " + file + ": " + e);
+            return;
+        }
+        thread = new Thread(this, "config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching.
+     */
+    public void stop() {
+        if (watchService == null) return;
+        try {
+            watchService.close();
+        } catch (IOException ignored) {}
+        try { thread.join(); } catch (InterruptedException ignored) {}
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents())
+                    if (file.getFileName().equals(event.context())) changed = true;
+                key.reset();
+                if (changed) reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {}
+    }
+
+    /**
+     * Reads the configuration file and stages the new snapshot (if anything reloadable changed).
+     */
+    void reload() {
+        Properties properties = new Properties();
+        try (InputStream is = Files.newInputStream(file)) {
+            properties.load(is);
+        } catch (IOException e) {
+            env.logger.severe("cannot reload configuration file " + file + ": " + e);
+            return;
+        }
+        try {
+            Config next = current.reload(env.logger, properties);
+            if (next == current) return;
+            current = next;
+            env.stageConfig(next);
+            env.logger.info("configuration file changed, the new timing applies from the next turn.");
+        } catch (IllegalArgumentException e) { // including NumberFormatException
+            env.logger.severe("ignoring the configuration change: " + e.getMessage());
+        }
+    }
+}
@@ -1,18 +1,50 @@
 package bguspl.set;
 
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
 public class Env {
 
     public final Logger logger;
-    public final Config config;
+    /**
+     * The configuration snapshot in use. Replaced only by applyStagedConfig (the dealer, between turns).
+     */
+    public volatile Config config;
+    private final AtomicReference<Config> staged = new AtomicReference<>();
     public final UserInterface ui;
     public final Util util;
+    public final Metrics metrics;
 
     public Env(Logger logger, Config config, UserInterface ui, Util util) {
+        this(logger, config, ui, util, Metrics.DISABLED);
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, Metrics metrics) {
         this.logger = logger;
         this.config = config;
         this.ui = ui;
         this.util = util;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Offers a new configuration snapshot, to be applied at the next safe point.
+     *
+     * @param next - the new snapshot (replaces any snapshot staged before and not applied yet).
+     */
+    public void stageConfig(Config next) {
+        staged.set(next);
+    }
+
+    /**
+     * Switches to the staged configuration snapshot, if any.
+     *
+     * @return - true iff the configuration was replaced.
+     */
+    public boolean applyStagedConfig() {
+        Config next = staged.getAndSet(null);
+        if (next == null) return false;
+        config = next;
+        return true;
     }
 }
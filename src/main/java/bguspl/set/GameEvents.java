@@ -0,0 +1,122 @@
+package bguspl.set;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Custom Java Flight Recorder events for the game lifecycle and the thread handshakes.
+ * They cost next to nothing unless a recording is running (e.g. java -XX:StartFlightRecording ...).
+ */
+public final class GameEvents {
+
+    private GameEvents() {}
+
+    @Name("bguspl.set.Turn")
+    @Label("Turn")
+    @Category({"Set Game", "Dealer"})
+    @Description("A dealer turn, from dealing the table until the countdown ran out, the table was left without a set, "
+            + "the watchdog reset the turn or the game ended")
+    public static class Turn extends Event {
+
+        @Label("Timed Out")
+        @Description("The countdown of a timed game ran out")
+        public boolean timedOut;
+
+        @Label("Table Stuck")
+        @Description("The table of an untimed game was left without a legal set")
+        public boolean stuck;
+
+        @Label("Reset")
+        @Description("The watchdog ended the turn")
+        public boolean reset;
+
+        @Label("Sets Collected")
+        public int sets;
+    }
+
+    @Name("bguspl.set.ClaimVerdict")
+    @Label("Claim Verdict")
+    @Category({"Set Game", "Dealer"})
+    @Description("The dealer's verdict on a set claimed by a player")
+    public static class ClaimVerdict extends Event {
+
+        @Label("Player")
+        public int player;
+
+        @Label("Verdict")
+        @Description("good, bad or stale (the cards changed under the claim)")
+        public String verdict;
+
+        @Label("Latency")
+        @Description("Time from the claim to the verdict")
+        @Timespan(Timespan.NANOSECONDS)
+        public long latency;
+
+        /**
+         * Emits a verdict event (if recording).
+         *
+         * @param player     - the player id.
+         * @param verdict    - good, bad or stale.
+         * @param claimNanos - System.nanoTime() at the time of the claim.
+         */
+        public static void emit(int player, String verdict, long claimNanos) {
+            ClaimVerdict event = new ClaimVerdict();
+            if (!event.isEnabled()) return;
+            event.player = player;
+            event.verdict = verdict;
+            event.latency = System.nanoTime() - claimNanos;
+            event.commit();
+        }
+    }
+
+    @Name("bguspl.set.TableChange")
+    @Label("Table Change")
+    @Category({"Set Game", "Table"})
+    @Description("A batch of card removals and placements published as one table epoch")
+    public static class TableChange extends Event {
+
+        @Label("Epoch")
+        public long epoch;
+
+        @Label("Cards Placed")
+        public int placed;
+
+        @Label("Cards Removed")
+        public int removed;
+    }
+
+    @Name("bguspl.set.PlayerWait")
+    @Label("Player Wait")
+    @Category({"Set Game", "Player"})
+    @Description("A player or computer thread blocked on one of its handshake monitors")
+    @Threshold("1 ms")
+    public static class PlayerWait extends Event {
+
+        @Label("Player")
+        public int player;
+
+        @Label("Monitor")
+        @Description("tableReady, wasChecked, choices or aiRun")
+        public String monitor;
+
+        /**
+         * Starts timing a wait, call commit() when it is over.
+         *
+         * @param player  - the player id.
+         * @param monitor - the name of the monitor waited on.
+         * @return - the started event.
+         */
+        public static PlayerWait start(int player, String monitor) {
+            PlayerWait event = new PlayerWait();
+            event.player = player;
+            event.monitor = monitor;
+            event.begin();
+            return event;
+        }
+    }
+}
@@ -9,6 +9,8 @@ import java.util.logging.Logger;
 
 /**
  * This class handles the input from the keyboard, translates it to table grid slots and dispatches accordingly.
+ * The presses are queued for the player threads (see Player.keyEvent), so the event dispatch thread never blocks on
+ * the game state.
  */
 class InputManager extends KeyAdapter {
 
@@ -41,10 +43,11 @@ class InputManager extends KeyAdapter {
     public void keyPressed(KeyEvent e) {
         // dispatch the key event to the player according to the key map
         int keyCode = e.getKeyCode();
-        int player = keyMap[keyCode] - 1;
+        int player = keyCode < keyMap.length ? keyMap[keyCode] - 1 : -1;
         if (player >= 0){
             logger.severe("key " + keyCode + " was pressed by player " + (player + 1));
-            players[player].keyPressed(keyToSlot[keyCode]);
+            if (!players[player].keyEvent(keyToSlot[keyCode], System.nanoTime()))
+                logger.warning("key " + keyCode + " of player " + (player + 1) + " dropped, too many keys pressed");
         }
     }
 }
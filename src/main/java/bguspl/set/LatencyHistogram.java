@@ -0,0 +1,110 @@
+package bguspl.set;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with log-linear buckets (HDR style): every power of two is split into
+ * 2^SUB_BITS buckets, so any recorded value is known within about 12%.
+ */
+public class LatencyHistogram {
+
+    /**
+     * A histogram that ignores everything (used when metrics are disabled).
+     */
+    static final LatencyHistogram NOOP = new LatencyHistogram(false);
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final boolean recording;
+    private final AtomicLongArray buckets;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    LatencyHistogram() {
+        this(true);
+    }
+
+    private LatencyHistogram(boolean recording) {
+        this.recording = recording;
+        this.buckets = new AtomicLongArray(recording ? (64 - SUB_BITS + 1) << SUB_BITS : 0);
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return ((exponent - SUB_BITS + 1) << SUB_BITS) + sub;
+    }
+
+    private static long lowestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = (bucket >>> SUB_BITS) + SUB_BITS - 1;
+        return (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << (exponent - SUB_BITS);
+    }
+
+    /**
+     * Records a single value.
+     *
+     * @param value - the value to record (e.g. a duration in nanoseconds), negative values count as 0.
+     */
+    public void record(long value) {
+        if (!recording) return;
+        value = Math.max(0L, value);
+        buckets.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Records the time elapsed since a System.nanoTime() reading.
+     *
+     * @param startNanos - the reading taken when the measured operation started.
+     */
+    public void recordSince(long startNanos) {
+        if (recording) record(System.nanoTime() - startNanos);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public long mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : sum.sum() / n;
+    }
+
+    /**
+     * Finds the value below which a given fraction of the recorded values fall.
+     *
+     * @param fraction - the fraction (0.5 for the median, 0.99 for the 99th percentile etc.)
+     * @return - the lowest value of the bucket holding that percentile (0 if nothing was recorded).
+     */
+    public long percentile(double fraction) {
+        long total = 0;
+        for (int i = 0; i < buckets.length(); i++) total += buckets.get(i);
+        long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank && seen > 0) return lowestValueOf(i);
+        }
+        return 0;
+    }
+
+    /**
+     * @return - a one line summary of the histogram with the values converted from nanoseconds to microseconds.
+     */
+    public String summaryMicros() {
+        return String.format("count=%d mean=%dus p50=%dus p90=%dus p99=%dus max=%dus", count(), mean() / 1000,
+                percentile(0.5) / 1000, percentile(0.9) / 1000, percentile(0.99) / 1000, max() / 1000);
+    }
+}
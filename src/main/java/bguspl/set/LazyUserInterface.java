@@ -0,0 +1,110 @@
+package bguspl.set;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.function.Consumer;
+
+/**
+ * A user interface that is attached after the game has started. Until the real user interface is attached, every
+ * call is buffered; attaching replays the buffered calls in order, and from then on calls are forwarded directly.
+ * Attaching null (e.g. running headless or when the Swing user interface cannot be created) drops the buffer and
+ * every later call.
+ */
+public class LazyUserInterface implements UserInterface {
+
+    /**
+     * The calls made before the user interface was attached (guarded by this).
+     */
+    private final Queue<Consumer<UserInterface>> pending = new ArrayDeque<>();
+
+    private volatile UserInterface ui;
+    private volatile boolean attached;
+
+    /**
+     * Attaches the real user interface and replays the calls buffered so far.
+     *
+     * @param ui - the user interface (null for none).
+     */
+    public synchronized void attach(UserInterface ui) {
+        if (attached) throw new IllegalStateException("user interface already attached");
+        if (ui != null)
+            for (Consumer<UserInterface> call : pending) call.accept(ui);
+        pending.clear();
+        this.ui = ui;
+        attached = true;
+    }
+
+    private void forward(Consumer<UserInterface> call) {
+        if (!attached) {
+            synchronized (this) {
+                if (!attached) {
+                    pending.add(call);
+                    return;
+                }
+            }
+        }
+        UserInterface target = ui;
+        if (target != null) call.accept(target);
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        forward(ui -> ui.placeCard(card, slot));
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        forward(ui -> ui.removeCard(slot));
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        forward(ui -> ui.placeToken(player, slot));
+    }
+
+    @Override
+    public void removeTokens() {
+        forward(UserInterface::removeTokens);
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        forward(ui -> ui.removeTokens(slot));
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        forward(ui -> ui.removeToken(player, slot));
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        forward(ui -> ui.setCountdown(millies, warn));
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        forward(ui -> ui.setElapsed(millies));
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        forward(ui -> ui.setFreeze(player, millies));
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        forward(ui -> ui.setScore(player, score));
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        int[] winners = players.clone();
+        forward(ui -> ui.announceWinner(winners));
+    }
+
+    @Override
+    public void dispose() {
+        forward(UserInterface::dispose);
+    }
+}
@@ -1,11 +1,14 @@
 package bguspl.set;
 
 import bguspl.set.ex.Dealer;
+import bguspl.set.ex.GameCheckpoint;
 import bguspl.set.ex.Player;
 import bguspl.set.ex.Table;
 
+import java.awt.GraphicsEnvironment;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -31,10 +34,24 @@ public class Main {
         try { thread.join(); } catch (InterruptedException ignored) {}
     }
 
+    /**
+     * When this system property is true, the game is terminated as soon as it is running (used to measure and to
+     * train the startup, see StartupBenchmark).
+     */
+    static final String STARTUP_PROBE = "bguspl.set.startupProbe";
+
+    /**
+     * The line printed once the game is running when probing the startup.
+     */
+    static final String STARTUP_PROBE_READY = "startup probe: game running";
+
     /**
      * The game's main function. Creates all data structures and initializes the threads.
+     * The game starts right away, while the user interface (which loads every card image) is created in the
+     * background and catches up on what it missed.
      *
-     * @param args - unused.
+     * @param args - optional: the configuration file name (default: config.properties), then a checkpoint of a game
+     *             (see Config.checkpointFile) to resume.
      */
     public static void main(String[] args) {
 
@@ -43,40 +60,76 @@ public class Main {
         // create the game environment objects
         logger = initLogger();
         ThreadLogger.logStart(logger, Thread.currentThread().getName());
-        Config config = new Config(logger, "config.properties");
+        String configFile = args.length > 0 ? args[0] : "config.properties";
+        Config config = new Config(logger, configFile);
         Util util = new UtilImpl(config);
 
         Player[] players = new Player[config.players];
-        UserInterface ui = null;
-        try {
-            ui = new UserInterfaceSwing(logger, config, players);
-        } catch (UnsupportedOperationException | IllegalArgumentException e) {
-            logger.severe("error creating swing user interface: " + e.getMessage());
-            logger.severe("will try to run without user interface");
-            if (config.humanPlayers > 0)
-                logger.severe("warning: running with human players with no user interface");
+        Metrics metrics = config.metrics ? new Metrics(true) : Metrics.DISABLED;
+        LazyUserInterface lazyUi = new LazyUserInterface();
+        SpectatorFeed spectators = openSpectatorFeed(config);
+        UserInterfaceFanOut ui = new UserInterfaceFanOut(logger, metrics)
+                .addSink("log", new UserInterfaceDecorator(logger, util, null), UserInterfaceFanOut.Overflow.DROP,
+                        UserInterfaceFanOut.DEFAULT_CAPACITY)
+                .addSink("window", lazyUi, UserInterfaceFanOut.Overflow.RESYNC,
+                        UserInterfaceFanOut.DEFAULT_CAPACITY);
+        if (spectators != null)
+            ui.addSink("spectators", spectators, UserInterfaceFanOut.Overflow.RESYNC,
+                    UserInterfaceFanOut.DEFAULT_CAPACITY);
+
+        Env env = new Env(logger, config, ui, util, metrics);
+        SetCache setCache = SetCache.shared(config);
+        if (setCache != null) {
+            metrics.gauge("sets.cache.hits", setCache::hits);
+            metrics.gauge("sets.cache.misses", setCache::misses);
+            metrics.gauge("sets.cache.evictions", setCache::evictions);
         }
-        ui = new UserInterfaceDecorator(logger, util, ui);
-
-        Env env = new Env(logger, config, ui, util);
+        metrics.start(logger, "game", config.metricsDumpFile, config.metricsDumpMillis);
+        ConfigWatcher configWatcher = new ConfigWatcher(env, configFile);
+        if (config.configHotReload) configWatcher.start();
 
         // create the game entities
         Table table = new Table(env);
         dealer = new Dealer(env, table, players);
         for (int i = 0; i < players.length; i++)
             players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers);
+        if (args.length > 1) resume(args[1], config);
+
+        // create the user interface in the background (or not at all, without loading swing, when headless)
+        if (config.headless || GraphicsEnvironment.isHeadless())
+            attachUserInterface(lazyUi, createTerminalUserInterface(config, util), config);
+        else {
+            Thread uiThread = new Thread(
+                    () -> attachUserInterface(lazyUi, createUserInterface(config, util, players), config),
+                    "ui-startup");
+            uiThread.start();
+        }
 
         // start the dealer thread
         ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", logger);
         dealerThread.startWithLog();
+        boolean probe = Boolean.getBoolean(STARTUP_PROBE);
+        if (probe) {
+            while (table.countCards() == 0 && dealerThread.isAlive()) Thread.yield(); // until the first deal
+            System.out.println(STARTUP_PROBE_READY);
+            System.out.flush();
+            dealer.terminate();
+        }
 
         try {
             // shutdown stuff
             dealerThread.joinWithLog();
-            if (!xButtonPressed && config.endGamePauseMillies > 0) Thread.sleep(config.endGamePauseMillies);
+            if (!probe && !config.statsFile.isEmpty()) storeStats(config, players);
+            env.applyStagedConfig(); // a change staged after the last turn still applies to the pause
+            if (!xButtonPressed && !probe && env.config.endGamePauseMillies > 0)
+                Thread.sleep(env.config.endGamePauseMillies);
             env.ui.dispose();
         } catch (InterruptedException ignored) {
         } finally {
+            configWatcher.stop();
+            ui.close();
+            if (spectators != null) spectators.close();
+            metrics.stop();
             logger.severe("thanks for playing... it was fun!");
             System.out.println("Thanks for playing... it was fun!");
             ThreadLogger.logStop(logger, Thread.currentThread().getName());
@@ -84,6 +137,64 @@ public class Main {
         }
     }
 
+    private static void resume(String file, Config config) {
+        long start = System.nanoTime();
+        try {
+            GameCheckpoint checkpoint = GameCheckpoint.read(Paths.get(file), config);
+            dealer.restore(checkpoint);
+            logger.info("resumed the game checkpointed in " + file + " at " + new Date(checkpoint.savedAtMillis)
+                    + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+        } catch (IOException e) {
+            logger.severe("cannot resume the game from " + file + ", starting a new game: " + e);
+        }
+    }
+
+    private static void storeStats(Config config, Player[] players) {
+        try (PlayerStatsStore store = new PlayerStatsStore(config.statsFile)) {
+            store.appendGame(config, players);
+            logger.info("player statistics (" + config.statsFile + "):\n" + store.report());
+        } catch (IOException e) {
+            logger.severe("cannot store the player statistics in " + config.statsFile + ": " + e);
+        }
+    }
+
+    private static SpectatorFeed openSpectatorFeed(Config config) {
+        if (config.spectatorPort == 0) return null;
+        try {
+            SpectatorFeed feed = new SpectatorFeed(logger, config, config.spectatorPort, null);
+            feed.start();
+            logger.info("spectators can watch on port " + feed.port());
+            return feed;
+        } catch (IOException e) {
+            logger.severe("cannot open the spectator feed on port " + config.spectatorPort + ": " + e);
+            return null;
+        }
+    }
+
+    private static UserInterface createUserInterface(Config config, Util util, Player[] players) {
+        try {
+            return new UserInterfaceSwing(logger, config, players);
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            logger.severe("error creating swing user interface: " + e.getMessage());
+            logger.severe(config.terminalUi ? "will draw the game in the terminal"
+                    : "will try to run without user interface");
+            return createTerminalUserInterface(config, util);
+        }
+    }
+
+    private static UserInterface createTerminalUserInterface(Config config, Util util) {
+        return config.terminalUi ? new TerminalUserInterface(config, util, System.out) : null;
+    }
+
+    private static void attachUserInterface(LazyUserInterface lazyUi, UserInterface ui, Config config) {
+        if (ui == null) {
+            System.out.println("Running without a user interface. Check logs.");
+            if (config.humanPlayers > 0)
+                logger.severe("warning: running with human players with no user interface");
+        }
+        lazyUi.attach(ui);
+    }
+
     private static Logger initLogger() {
 
         //just to make our log file nicer :)
@@ -0,0 +1,187 @@
+package bguspl.set;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+/**
+ * A registry of low-overhead game metrics: counters (LongAdder), gauges (sampled on read) and latency histograms.
+ * The registry is exposed via JMX and can be dumped to a file periodically. When disabled, every instrument it hands
+ * out is a shared no-op, so instrumented code pays almost nothing.
+ */
+public class Metrics implements MetricsMXBean {
+
+    /**
+     * A registry that records nothing.
+     */
+    public static final Metrics DISABLED = new Metrics(false);
+
+    /**
+     * A monotonically increasing count.
+     */
+    public static class Counter {
+
+        private static final Counter NOOP = new Counter(null);
+
+        private final LongAdder adder;
+
+        private Counter(LongAdder adder) {
+            this.adder = adder;
+        }
+
+        public void increment() {
+            if (adder != null) adder.increment();
+        }
+
+        public void add(long amount) {
+            if (adder != null) adder.add(amount);
+        }
+
+        public long sum() {
+            return adder == null ? 0 : adder.sum();
+        }
+    }
+
+    public final boolean enabled;
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    private ObjectName objectName;
+    private Thread dumper;
+
+    public Metrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param name - the counter name.
+     * @return - the counter registered under the name (created on first use).
+     */
+    public Counter counter(String name) {
+        if (!enabled) return Counter.NOOP;
+        return counters.computeIfAbsent(name, n -> new Counter(new LongAdder()));
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge previously registered under the same name.
+     *
+     * @param name  - the gauge name.
+     * @param value - supplies the current value whenever the gauge is read.
+     */
+    public void gauge(String name, LongSupplier value) {
+        if (enabled) gauges.put(name, value);
+    }
+
+    /**
+     * @param name - the histogram name.
+     * @return - the latency histogram registered under the name (created on first use).
+     */
+    public LatencyHistogram histogram(String name) {
+        if (!enabled) return LatencyHistogram.NOOP;
+        return histograms.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new TreeMap<>();
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        return values;
+    }
+
+    @Override
+    public Map<String, String> getLatencies() {
+        Map<String, String> values = new TreeMap<>();
+        histograms.forEach((name, histogram) -> values.put(name, histogram.summaryMicros()));
+        return values;
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        getCounters().forEach((name, value) -> sb.append("counter ").append(name).append(" = ").append(value).append('\n'));
+        getGauges().forEach((name, value) -> sb.append("gauge   ").append(name).append(" = ").append(value).append('\n'));
+        getLatencies().forEach((name, value) -> sb.append("latency ").append(name).append(": ").append(value).append('\n'));
+        return sb.toString();
+    }
+
+    /**
+     * Registers the registry with the platform MBean server and starts dumping it to a file (if enabled).
+     *
+     * @param logger       - the logger for errors.
+     * @param name         - the name distinguishing this registry in JMX.
+     * @param dumpFile     - the file to append reports to (null or empty for none).
+     * @param periodMillis - the time between reports.
+     */
+    public void start(Logger logger, String name, String dumpFile, long periodMillis) {
+        if (!enabled) return;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("bguspl.set:type=Metrics,name=" + ObjectName.quote(name));
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            logger.severe("cannot register metrics with JMX: " + e);
+            objectName = null;
+        }
+        if (dumpFile == null || dumpFile.isEmpty() || periodMillis <= 0) return;
+        dumper = new Thread(() -> {
+            SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(periodMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                String report = "--- " + name + " " + format.format(new Date()) + '\n' + dump();
+                try {
+                    Files.write(Paths.get(dumpFile), report.getBytes(StandardCharsets.UTF_8),
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                } catch (IOException e) {
+                    logger.severe("cannot write metrics to " + dumpFile + ": " + e);
+                }
+            }
+        }, "metrics-" + name);
+        dumper.setDaemon(true);
+        dumper.start();
+    }
+
+    /**
+     * Writes a final report (if dumping) and unregisters from JMX.
+     */
+    public void stop() {
+        if (dumper != null) {
+            dumper.interrupt();
+            try { dumper.join(); } catch (InterruptedException ignored) {}
+            dumper = null;
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException ignored) {}
+            objectName = null;
+        }
+    }
+}
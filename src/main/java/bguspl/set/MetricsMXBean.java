@@ -0,0 +1,29 @@
+package bguspl.set;
+
+import java.util.Map;
+
+/**
+ * The JMX view of the game metrics.
+ */
+public interface MetricsMXBean {
+
+    /**
+     * @return - the current value of every counter, by name.
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * @return - the current value of every gauge, by name.
+     */
+    Map<String, Long> getGauges();
+
+    /**
+     * @return - a summary of every latency histogram (in microseconds), by name.
+     */
+    Map<String, String> getLatencies();
+
+    /**
+     * @return - a text report of all the metrics.
+     */
+    String dump();
+}
@@ -0,0 +1,253 @@
+package bguspl.set;
+
+import bguspl.set.ex.Player;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A persistent store of per game player statistics, kept in a memory-mapped file of fixed size records (one record
+ * per player per game) keyed by the player name.
+ * <p>
+ * Appends are lock-free: a record index is reserved with an atomic counter and the record is written in place, with
+ * a checksum written last. Readers skip records whose checksum does not match (still being written, or torn by a
+ * crash), so aggregate reads never lock out the writers. The file grows a segment at a time; only mapping a new
+ * segment takes a lock.
+ * <p>
+ * File layout: a HEADER_SIZE bytes header (magic, version, record size) followed by RECORD_SIZE bytes records:
+ * name (NAME_SIZE bytes of UTF-8, zero padded), points, penalties, claims, verdicts, won (ints), claim latency and
+ * reaction time totals in nanoseconds, the time of the game (millis since the epoch) and the checksum (longs).
+ */
+public class PlayerStatsStore implements Closeable {
+
+    /**
+     * The aggregated statistics of a single player.
+     */
+    public static class PlayerStats {
+        public long games;
+        public long wins;
+        public long points;
+        public long penalties;
+        public long claims;
+        public long verdicts;
+        public long claimLatencyNanos;
+        public long reactionNanos;
+
+        /**
+         * @return - the mean time from a claim to the dealer's verdict, in microseconds.
+         */
+        public long averageClaimLatencyMicros() {
+            return verdicts == 0 ? 0 : claimLatencyNanos / verdicts / 1000;
+        }
+
+        /**
+         * @return - the mean time from a table change to a claim, in milliseconds.
+         */
+        public long averageReactionMillis() {
+            return claims == 0 ? 0 : reactionNanos / claims / 1000000;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("games=%d wins=%d points=%d penalties=%d claims=%d avg claim latency=%dus avg reaction=%dms",
+                    games, wins, points, penalties, claims, averageClaimLatencyMicros(), averageReactionMillis());
+        }
+    }
+
+    private static final long MAGIC = 0x5345545354415453L; // "SETSTATS"
+    private static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int NAME_SIZE = 32;
+    static final int RECORD_SIZE = 88;
+    private static final int SEGMENT_RECORDS = 4096;
+
+    private static final int POINTS = NAME_SIZE;
+    private static final int PENALTIES = POINTS + 4;
+    private static final int CLAIMS = PENALTIES + 4;
+    private static final int VERDICTS = CLAIMS + 4;
+    private static final int WON = VERDICTS + 4;
+    private static final int LATENCY = WON + 8; // 4 bytes padding
+    private static final int REACTION = LATENCY + 8;
+    private static final int TIME = REACTION + 8;
+    private static final int CHECKSUM = TIME + 8;
+
+    private final FileChannel channel;
+
+    /**
+     * The mapped segments (replaced by a longer array when a segment is added).
+     */
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    /**
+     * The number of records reserved so far.
+     */
+    private final AtomicLong records;
+
+    /**
+     * Opens (or creates) a statistics file.
+     *
+     * @param filename - the file name.
+     * @throws IOException - if the file cannot be opened or is not a statistics file.
+     */
+    public PlayerStatsStore(String filename) throws IOException {
+        Path path = Paths.get(filename).toAbsolutePath();
+        if (path.getParent() != null) Files.createDirectories(path.getParent());
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        if (header.getLong(0) == 0) {
+            header.putInt(8, VERSION);
+            header.putInt(12, RECORD_SIZE);
+            header.putLong(0, MAGIC);
+        } else if (header.getLong(0) != MAGIC || header.getInt(8) != VERSION || header.getInt(12) != RECORD_SIZE) {
+            channel.close();
+            throw new IOException(filename + " is not a player statistics file of version " + VERSION);
+        }
+        long last = -1;
+        long existing = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+        for (long index = 0; index < existing; index++)
+            if (segment(index).getLong(offset(index) + CHECKSUM) != 0) last = index;
+        records = new AtomicLong(last + 1);
+    }
+
+    private static int offset(long index) {
+        return (int) (index % SEGMENT_RECORDS) * RECORD_SIZE;
+    }
+
+    /**
+     * @return - the segment holding the record (mapped now if needed).
+     */
+    private MappedByteBuffer segment(long index) throws IOException {
+        int segment = (int) (index / SEGMENT_RECORDS);
+        MappedByteBuffer[] mapped = segments;
+        if (segment < mapped.length) return mapped[segment];
+        synchronized (this) {
+            mapped = segments;
+            if (segment >= mapped.length) {
+                MappedByteBuffer[] grown = Arrays.copyOf(mapped, segment + 1);
+                for (int i = mapped.length; i <= segment; i++)
+                    grown[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                            HEADER_SIZE + (long) i * SEGMENT_RECORDS * RECORD_SIZE, (long) SEGMENT_RECORDS * RECORD_SIZE);
+                segments = mapped = grown;
+            }
+            return mapped[segment];
+        }
+    }
+
+    private static long checksum(MappedByteBuffer segment, int offset) {
+        long hash = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < CHECKSUM; i += 8) {
+            hash = (hash ^ segment.getLong(offset + i)) * 0xFF51AFD7ED558CCDL;
+            hash ^= hash >>> 33;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Appends the statistics of a player in a single game (may be called by many threads at once).
+     *
+     * @param name              - the player name (truncated to NAME_SIZE - 1 bytes).
+     * @param won               - true iff the player won (or shared the win).
+     * @param points            - the player's score.
+     * @param penalties         - the number of penalties.
+     * @param claims            - the number of sets claimed.
+     * @param reactionNanos     - the total time from a table change to each claim.
+     * @param verdicts          - the number of claims the dealer decided on.
+     * @param claimLatencyNanos - the total time from each claim to the dealer's verdict.
+     */
+    public void append(String name, boolean won, int points, int penalties, int claims, long reactionNanos,
+                       int verdicts, long claimLatencyNanos) throws IOException {
+        long index = records.getAndIncrement();
+        MappedByteBuffer segment = segment(index);
+        int offset = offset(index);
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < NAME_SIZE; i++)
+            segment.put(offset + i, i < Math.min(bytes.length, NAME_SIZE - 1) ? bytes[i] : 0);
+        segment.putInt(offset + POINTS, points);
+        segment.putInt(offset + PENALTIES, penalties);
+        segment.putInt(offset + CLAIMS, claims);
+        segment.putInt(offset + VERDICTS, verdicts);
+        segment.putInt(offset + WON, won ? 1 : 0);
+        segment.putLong(offset + LATENCY, claimLatencyNanos);
+        segment.putLong(offset + REACTION, reactionNanos);
+        segment.putLong(offset + TIME, System.currentTimeMillis());
+        segment.putLong(offset + CHECKSUM, checksum(segment, offset));
+    }
+
+    /**
+     * Appends the statistics of every player of a finished game, keyed by config.playerNames.
+     *
+     * @param config  - the configuration of the game.
+     * @param players - the players (their threads must have finished).
+     */
+    public void appendGame(Config config, Player[] players) throws IOException {
+        int best = 0;
+        for (Player player : players) best = Math.max(best, player.score());
+        for (Player player : players)
+            append(config.playerNames[player.id], player.score() == best, player.score(), player.penaltyCount(),
+                    player.claimCount(), player.reactionNanos(), player.verdictCount(), player.claimLatencyNanos());
+    }
+
+    /**
+     * @return - the number of records reserved so far (the last ones may still be being written).
+     */
+    public long size() {
+        return records.get();
+    }
+
+    /**
+     * Sums up the records of every player.
+     *
+     * @return - the statistics by player name.
+     */
+    public Map<String, PlayerStats> aggregate() throws IOException {
+        Map<String, PlayerStats> stats = new TreeMap<>();
+        byte[] name = new byte[NAME_SIZE];
+        long size = records.get();
+        for (long index = 0; index < size; index++) {
+            MappedByteBuffer segment = segment(index);
+            int offset = offset(index);
+            if (segment.getLong(offset + CHECKSUM) != checksum(segment, offset)) continue;
+            int length = 0;
+            while (length < NAME_SIZE && (name[length] = segment.get(offset + length)) != 0) length++;
+            PlayerStats player = stats.computeIfAbsent(new String(name, 0, length, StandardCharsets.UTF_8), n -> new PlayerStats());
+            player.games++;
+            player.wins += segment.getInt(offset + WON);
+            player.points += segment.getInt(offset + POINTS);
+            player.penalties += segment.getInt(offset + PENALTIES);
+            player.claims += segment.getInt(offset + CLAIMS);
+            player.verdicts += segment.getInt(offset + VERDICTS);
+            player.claimLatencyNanos += segment.getLong(offset + LATENCY);
+            player.reactionNanos += segment.getLong(offset + REACTION);
+        }
+        return stats;
+    }
+
+    /**
+     * @return - a line per player with the aggregated statistics.
+     */
+    public String report() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        aggregate().forEach((name, stats) -> sb.append(name).append(": ").append(stats).append('\n'));
+        return sb.toString();
+    }
+
+    /**
+     * Flushes the records to the file and closes it.
+     */
+    @Override
+    public void close() throws IOException {
+        for (MappedByteBuffer segment : segments) segment.force();
+        channel.close();
+    }
+}
@@ -0,0 +1,192 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the sets found among collections of cards, so the same table contents (which recur after reshuffles, and
+ * across the games of a tournament) are searched once. A collection is keyed by the bitmask of its card ids (two longs
+ * for the 81 cards deck), whatever the order of the cards.
+ * <p>
+ * The cache is split into segments by key hash, each a small LRU map under its own lock, so games on different
+ * threads rarely wait for each other; searching on a miss happens outside the locks. The least recently used entry of a
+ * full segment is evicted. Games with the same card features share a cache (see shared).
+ */
+public class SetCache {
+
+    private static final int SEGMENTS = 16;
+
+    private static final ConcurrentMap<String, SetCache> SHARED = new ConcurrentHashMap<>();
+
+    /**
+     * @param config - the game configuration.
+     * @return - the cache shared by all the games with the configuration's card features (created with
+     * config.setCacheSize entries by the first of them), null when config.setCacheSize is 0.
+     */
+    public static SetCache shared(Config config) {
+        if (config.setCacheSize == 0) return null;
+        return SHARED.computeIfAbsent(config.featureCount + "x" + config.featureSize,
+                features -> new SetCache(new SetFinder(config), config.deckSize, config.setCacheSize));
+    }
+
+    /**
+     * @return - the shared caches by card features ("featureCount x featureSize").
+     */
+    public static Map<String, SetCache> shared() {
+        return Collections.unmodifiableMap(SHARED);
+    }
+
+    private static final class Key {
+        private final long[] bits;
+        private final int hash;
+
+        private Key(List<Integer> cards, int words) {
+            bits = new long[words];
+            for (int card : cards) bits[card >>> 6] |= 1L << card;
+            int h = Arrays.hashCode(bits);
+            hash = h ^ (h >>> 16);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(bits, ((Key) other).bits);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The first sets found among a collection of cards, complete iff these are all of its sets.
+     */
+    private static final class Found {
+        private final List<int[]> sets;
+        private final boolean complete;
+
+        private Found(List<int[]> sets, boolean complete) {
+            this.sets = sets;
+            this.complete = complete;
+        }
+    }
+
+    private final class Segment extends LinkedHashMap<Key, Found> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        private Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Found> eldest) {
+            if (size() <= capacity) return false;
+            evictions.increment();
+            return true;
+        }
+    }
+
+    private final SetFinder finder;
+    private final int words;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param finder   - searches the sets on a miss.
+     * @param deckSize - the number of card ids.
+     * @param capacity - the maximal number of collections remembered.
+     */
+    public SetCache(SetFinder finder, int deckSize, int capacity) {
+        this.finder = finder;
+        words = (deckSize + 63) >>> 6;
+        for (int i = 0; i < SEGMENTS; i++) segments[i] = new Segment(Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS));
+    }
+
+    /**
+     * Finds sets among the given cards (see SetFinder.find), searching only if the cache does not have them.
+     *
+     * @param cards - the cards to search (card ids, no duplicates).
+     * @param count - the number of sets to stop after.
+     * @return - up to count sets, each sorted in ascending card order (the same sets SetFinder.find returns).
+     */
+    public List<int[]> find(List<Integer> cards, int count) {
+        Key key = new Key(cards, words);
+        Segment segment = segments[key.hash & (SEGMENTS - 1)];
+        Found cached;
+        synchronized (segment) {
+            cached = segment.get(key);
+        }
+        if (cached != null && (cached.complete || cached.sets.size() >= count)) {
+            hits.increment();
+            return copy(cached.sets, count);
+        }
+        misses.increment();
+        List<int[]> sets = finder.find(cards, count);
+        Found found = new Found(sets, sets.size() < count);
+        synchronized (segment) {
+            cached = segment.get(key);
+            if (cached == null || !cached.complete && (found.complete || cached.sets.size() < sets.size()))
+                segment.put(key, found);
+        }
+        return copy(sets, count);
+    }
+
+    private static List<int[]> copy(List<int[]> sets, int count) {
+        int size = Math.min(count, sets.size());
+        List<int[]> copy = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) copy.add(sets.get(i).clone());
+        return copy;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return - the fraction of the lookups found in the cache (0 before the first lookup).
+     */
+    public double hitRate() {
+        long hits = hits();
+        long lookups = hits + misses();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d hits, %d misses (%.1f%% hit rate), %d evictions, %d entries", hits(), misses(),
+                100 * hitRate(), evictions(), size());
+    }
+
+    /**
+     * @return - the number of collections remembered.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments)
+            synchronized (segment) {
+                size += segment.size();
+            }
+        return size;
+    }
+}
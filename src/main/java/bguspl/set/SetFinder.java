@@ -0,0 +1,244 @@
+package bguspl.set;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Finds the legal sets among a collection of cards, for any number of cards per set (config.featureSize).
+ * <p>
+ * A set is featureSize cards where every feature is either the same on all cards or different on all cards. Instead
+ * of testing every featureSize-combination, the search picks featureSize - 1 cards and computes the single card that
+ * completes them: per feature, the common value if the chosen cards agree on it, or the one value missing if they
+ * all differ on it. That removes a factor of n from the search. The partial choices are pruned as soon as some
+ * feature is neither all-same nor all-different, which cuts most branches after the second card.
+ * <p>
+ * The same search counts sets without listing them, e.g. to keep track of the sets left among the remaining cards
+ * as cards leave the game (see countSetsWith).
+ */
+public class SetFinder {
+
+    private final int featureSize;
+    private final int featureCount;
+    private final int deckSize;
+
+    /**
+     * The features of every card id (card * featureCount + feature).
+     */
+    private final int[] features;
+
+    /**
+     * The weight of each feature digit in a card id.
+     */
+    private final int[] weights;
+
+    /**
+     * The card completing each pair of cards (a * deckSize + b) into a set, precomputed for 3 card sets on decks of
+     * up to PAIR_TABLE_MAX_DECK cards (null otherwise).
+     */
+    private final int[] pairCompletion;
+    private static final int PAIR_TABLE_MAX_DECK = 729;
+
+    public SetFinder(Config config) {
+        featureSize = config.featureSize;
+        featureCount = config.featureCount;
+        deckSize = config.deckSize;
+        features = new int[config.deckSize * featureCount];
+        weights = new int[featureCount];
+        for (int i = featureCount - 1, weight = 1; i >= 0; --i, weight *= featureSize) weights[i] = weight;
+        for (int card = 0; card < config.deckSize; card++)
+            for (int i = 0; i < featureCount; i++)
+                features[card * featureCount + i] = card / weights[i] % featureSize;
+        if (featureSize == 3 && config.deckSize <= PAIR_TABLE_MAX_DECK) {
+            pairCompletion = new int[config.deckSize * config.deckSize];
+            for (int a = 0; a < config.deckSize; a++)
+                for (int b = 0; b < config.deckSize; b++) {
+                    int card = 0;
+                    for (int i = 0; i < featureCount; i++) // 0+1+2 = 3, so the third value is -(a+b) mod 3
+                        card += (6 - features[a * featureCount + i] - features[b * featureCount + i]) % 3 * weights[i];
+                    pairCompletion[a * config.deckSize + b] = card;
+                }
+        } else pairCompletion = null;
+    }
+
+    /**
+     * Finds a candidate card that completes a set with featureSize - 1 of the given cards. For 3 card sets the
+     * pairs with a random first card are tried first, each with a single table lookup, so a completion is usually
+     * found in O(cards) time. The candidates are only asked about the cards that complete a set, so a membership
+     * test of the deck (e.g. DrawPile::contains) keeps the search independent of the deck size.
+     *
+     * @param cards      - the cards (card ids, no duplicates).
+     * @param candidates - whether a card id may complete the set (false for the given cards).
+     * @param first      - the index of the card to try first.
+     * @return - the completing card, or -1 if no candidate completes a set.
+     */
+    public int findCompletion(int[] cards, IntPredicate candidates, int first) {
+        if (featureSize < 2 || cards.length < featureSize - 1) return -1;
+        if (featureSize == 2) {
+            for (int card = 0; card < deckSize; card++) if (candidates.test(card)) return card;
+            return -1;
+        }
+        if (pairCompletion != null) {
+            for (int i = 0; i < cards.length; i++) {
+                int a = cards[(first + i) % cards.length];
+                for (int b : cards) {
+                    int card = pairCompletion[a * deckSize + b];
+                    if (a != b && candidates.test(card)) return card;
+                }
+            }
+            return -1;
+        }
+        int[] masks = new int[(featureSize - 1) * featureCount];
+        return complete(cards, candidates, masks, 0, 0);
+    }
+
+    /**
+     * Chooses the depth-th of featureSize - 1 cards (from index start on) and looks up the completing card.
+     */
+    private int complete(int[] cards, IntPredicate candidates, int[] masks, int depth, int start) {
+        int base = depth * featureCount;
+        if (depth == featureSize - 1) {
+            int full = (1 << featureSize) - 1;
+            int card = 0;
+            for (int i = 0; i < featureCount; i++) {
+                int mask = masks[base - featureCount + i];
+                card += Integer.numberOfTrailingZeros(Integer.bitCount(mask) == 1 ? mask : full & ~mask) * weights[i];
+            }
+            return candidates.test(card) ? card : -1;
+        }
+        for (int index = start; index < cards.length; index++) {
+            int offset = cards[index] * featureCount;
+            boolean consistent = true;
+            for (int i = 0; i < featureCount && consistent; i++) {
+                int mask = (depth == 0 ? 0 : masks[base - featureCount + i]) | 1 << features[offset + i];
+                int distinct = Integer.bitCount(mask);
+                consistent = distinct == 1 || distinct == depth + 1;
+                masks[base + i] = mask;
+            }
+            if (!consistent) continue;
+            int card = complete(cards, candidates, masks, depth + 1, index + 1);
+            if (card != -1) return card;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds sets among the given cards.
+     *
+     * @param cards - the cards to search (card ids, no duplicates).
+     * @param count - the number of sets to stop after.
+     * @return - up to count sets, each sorted in ascending card order.
+     */
+    public List<int[]> find(List<Integer> cards, int count) {
+        List<int[]> sets = new ArrayList<>();
+        if (count <= 0 || cards.size() < featureSize || featureSize < 2) return sets;
+        int[] pool = new int[cards.size()];
+        for (int i = 0; i < pool.length; i++) pool[i] = cards.get(i);
+        Arrays.sort(pool);
+        if (featureSize == 2) { // a single card determines nothing, but any two different cards are a set
+            for (int i = 0; i < pool.length && sets.size() < count; i++)
+                for (int j = i + 1; j < pool.length && sets.size() < count; j++)
+                    sets.add(new int[]{pool[i], pool[j]});
+            return sets;
+        }
+        // masks[depth * featureCount + feature]: the feature values seen on the chosen cards 0..depth
+        int[] masks = new int[(featureSize - 1) * featureCount];
+        search(pool, positions(pool), masks, new int[featureSize], 0, 0, sets, count, null);
+        return sets;
+    }
+
+    /**
+     * Counts the sets in the whole deck in closed form: each feature of an ordered set is either the same on all
+     * cards (featureSize ways) or a permutation (featureSize! ways), which counts the tuples of one card repeated
+     * (all features the same) too.
+     *
+     * @return - ((featureSize + featureSize!)^featureCount - featureSize^featureCount) / featureSize!.
+     */
+    public long countDeckSets() {
+        if (featureSize < 2) return 0;
+        BigInteger factorial = BigInteger.ONE;
+        for (int i = 2; i <= featureSize; i++) factorial = factorial.multiply(BigInteger.valueOf(i));
+        BigInteger size = BigInteger.valueOf(featureSize);
+        return size.add(factorial).pow(featureCount).subtract(size.pow(featureCount)).divide(factorial).longValue();
+    }
+
+    /**
+     * Counts the sets that contain a card, among the present cards.
+     *
+     * @param card    - the card.
+     * @param present - whether each card id is present (the card itself included).
+     * @return - the number of sets of present cards that contain the card.
+     */
+    public long countSetsWith(int card, boolean[] present) {
+        if (!present[card] || featureSize < 2) return 0;
+        int size = 0;
+        for (boolean p : present) if (p) size++;
+        int[] pool = new int[size - 1];
+        for (int other = 0, i = 0; other < present.length; other++)
+            if (present[other] && other != card) pool[i++] = other;
+        if (featureSize == 2) return pool.length;
+        int[] masks = new int[(featureSize - 1) * featureCount];
+        for (int i = 0; i < featureCount; i++) masks[i] = 1 << features[card * featureCount + i];
+        long[] counter = new long[1];
+        search(pool, positions(pool), masks, new int[featureSize], 1, 0, null, Integer.MAX_VALUE, counter);
+        return counter[0];
+    }
+
+    /**
+     * @return - the index of each card id in the (sorted) pool, -1 if not in the pool.
+     */
+    private int[] positions(int[] pool) {
+        int[] position = new int[features.length / featureCount];
+        Arrays.fill(position, -1);
+        for (int i = 0; i < pool.length; i++) position[pool[i]] = i;
+        return position;
+    }
+
+    /**
+     * Chooses the depth-th card (from index start on) and recurses, or completes the set once featureSize - 1 cards
+     * are chosen. The sets found are either listed in sets or only counted in counter[0].
+     *
+     * @return - true iff enough sets were found.
+     */
+    private boolean search(int[] pool, int[] position, int[] masks, int[] chosen, int depth, int start,
+                           List<int[]> sets, int count, long[] counter) {
+        int base = depth * featureCount;
+        if (depth == featureSize - 1) {
+            int full = (1 << featureSize) - 1;
+            int card = 0;
+            for (int i = 0; i < featureCount; i++) {
+                int mask = masks[base - featureCount + i];
+                int value = Integer.bitCount(mask) == 1 ? mask : full & ~mask; // all the same, or the one missing
+                card += Integer.numberOfTrailingZeros(value) * weights[i];
+            }
+            int last = position[card];
+            if (last < start) return false; // not in the pool, or already counted with a smaller last card
+            if (sets == null) return ++counter[0] >= count;
+            int[] set = new int[featureSize];
+            for (int i = 0; i < depth; i++) set[i] = pool[chosen[i]];
+            set[depth] = card;
+            sets.add(set);
+            return sets.size() >= count;
+        }
+        // leave room for the cards still to be chosen and the completing card
+        for (int index = start; index <= pool.length - (featureSize - depth); index++) {
+            int offset = pool[index] * featureCount;
+            boolean consistent = true;
+            for (int i = 0; i < featureCount; i++) {
+                int mask = (depth == 0 ? 0 : masks[base - featureCount + i]) | 1 << features[offset + i];
+                int distinct = Integer.bitCount(mask);
+                if (distinct != 1 && distinct != depth + 1) {
+                    consistent = false;
+                    break;
+                }
+                masks[base + i] = mask;
+            }
+            if (!consistent) continue;
+            chosen[depth] = index;
+            if (search(pool, position, masks, chosen, depth + 1, index + 1, sets, count, counter)) return true;
+        }
+        return false;
+    }
+}
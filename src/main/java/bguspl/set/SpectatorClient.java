@@ -0,0 +1,177 @@
+package bguspl.set;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+/**
+ * A headless spectator: connects to a SpectatorFeed, rebuilds the table and scoreboard from its frames and prints
+ * the table after every change.
+ * <p>
+ * Usage: java -cp ... bguspl.set.SpectatorClient [host] port
+ */
+public class SpectatorClient {
+
+    /**
+     * The game state as rebuilt from the frames of a feed.
+     */
+    public static class View {
+        public int tableSize;
+        public int players;
+        public int playerWords;
+        public int[] cards = new int[0];
+        public long[] tokens = new long[0]; // slot * playerWords + word
+        public int[] scores = new int[0];
+        public long[] freezes = new long[0];
+        public byte timerMode = SpectatorFeed.TIMER_NONE;
+        public long timerMillis;
+        public long timerSetAt; // System.currentTimeMillis() when timerMillis was received
+        public int[] winners;
+        public long frames;
+
+        /**
+         * Applies a single frame.
+         *
+         * @param frame - the frame type and its payload (without the length).
+         * @return - the frame type.
+         * @throws IOException - if the frame is of an unknown type or version.
+         */
+        public byte apply(ByteBuffer frame) throws IOException {
+            byte type = frame.get();
+            if (type != SpectatorFeed.SNAPSHOT && cards.length == 0)
+                throw new IOException("the feed did not start with a snapshot");
+            frames++;
+            switch (type) {
+                case SpectatorFeed.SNAPSHOT:
+                    short version = frame.getShort();
+                    if (version != SpectatorFeed.VERSION) throw new IOException("unsupported feed version " + version);
+                    tableSize = frame.getShort();
+                    players = frame.getShort();
+                    playerWords = frame.getShort();
+                    cards = new int[tableSize];
+                    tokens = new long[tableSize * playerWords];
+                    for (int slot = 0; slot < tableSize; slot++) {
+                        cards[slot] = frame.getShort();
+                        for (int word = 0; word < playerWords; word++) tokens[slot * playerWords + word] = frame.getLong();
+                    }
+                    scores = new int[players];
+                    freezes = new long[players];
+                    for (int player = 0; player < players; player++) {
+                        scores[player] = frame.getInt();
+                        freezes[player] = frame.getLong();
+                    }
+                    timerMode = frame.get();
+                    timerMillis = frame.getLong();
+                    timerSetAt = System.currentTimeMillis();
+                    winners = getWinners(frame);
+                    break;
+                case SpectatorFeed.CARD:
+                    cards[frame.getShort()] = frame.getShort();
+                    break;
+                case SpectatorFeed.TOKENS:
+                    int slot = frame.getShort();
+                    for (int word = 0; word < playerWords; word++) tokens[slot * playerWords + word] = frame.getLong();
+                    break;
+                case SpectatorFeed.SCORE:
+                    scores[frame.getShort()] = frame.getInt();
+                    break;
+                case SpectatorFeed.FREEZE:
+                    freezes[frame.getShort()] = frame.getLong();
+                    break;
+                case SpectatorFeed.TIMER:
+                    timerMode = frame.get();
+                    timerMillis = frame.getLong();
+                    timerSetAt = System.currentTimeMillis();
+                    break;
+                case SpectatorFeed.WINNERS:
+                    winners = getWinners(frame);
+                    break;
+                default:
+                    throw new IOException("unknown frame type " + type);
+            }
+            return type;
+        }
+
+        private static int[] getWinners(ByteBuffer frame) {
+            int count = frame.getShort();
+            if (count < 0) return null;
+            int[] winners = new int[count];
+            for (int i = 0; i < count; i++) winners[i] = frame.getShort();
+            return winners;
+        }
+
+        /**
+         * @return - the milliseconds the timer shows now (it counts by itself between the TIMER frames).
+         */
+        public long timerNow() {
+            long passed = System.currentTimeMillis() - timerSetAt;
+            if (timerMode == SpectatorFeed.TIMER_ELAPSED) return timerMillis + passed;
+            return timerMode == SpectatorFeed.TIMER_NONE ? timerMillis : Math.max(0, timerMillis - passed);
+        }
+
+        /**
+         * @return - true iff the player has a token on the slot.
+         */
+        public boolean hasToken(int player, int slot) {
+            return (tokens[slot * playerWords + (player >>> 6)] & 1L << player) != 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (int slot = 0; slot < tableSize; slot++) {
+                sb.append(cards[slot] < 0 ? "  --" : String.format("%4d", cards[slot])).append('[');
+                for (int player = 0; player < players; player++) if (hasToken(player, slot)) sb.append(player + 1);
+                sb.append("] ");
+            }
+            sb.append("| scores ").append(Arrays.toString(scores));
+            if (timerMode != SpectatorFeed.TIMER_NONE)
+                sb.append(timerMode == SpectatorFeed.TIMER_ELAPSED ? " | elapsed " : " | remaining ").append(timerNow() / 1000);
+            if (winners != null) sb.append(" | winners ").append(Arrays.toString(winners));
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Reads the next frame from the feed.
+     *
+     * @param channel - the (blocking) connection to the feed.
+     * @param header  - a 4 bytes buffer for the frame length.
+     * @return - the frame type and payload, null at the end of the feed.
+     */
+    public static ByteBuffer readFrame(SocketChannel channel, ByteBuffer header) throws IOException {
+        header.clear();
+        if (!readFully(channel, header)) return null;
+        header.flip();
+        ByteBuffer frame = ByteBuffer.allocate(header.getInt());
+        if (!readFully(channel, frame)) throw new EOFException("the feed ended in the middle of a frame");
+        frame.flip();
+        return frame;
+    }
+
+    private static boolean readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            if (channel.read(buffer) < 0) {
+                if (buffer.position() == 0) return false;
+                throw new EOFException("the feed ended in the middle of a frame");
+            }
+        return true;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 1 ? args[0] : "localhost";
+        int port = Integer.parseInt(args[args.length > 1 ? 1 : 0]);
+        View view = new View();
+        ByteBuffer header = ByteBuffer.allocate(4);
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port))) {
+            for (ByteBuffer frame = readFrame(channel, header); frame != null; frame = readFrame(channel, header)) {
+                byte type = view.apply(frame);
+                if (type != SpectatorFeed.TIMER && type != SpectatorFeed.FREEZE) System.out.println(view);
+            }
+        }
+        System.out.println("the feed ended after " + view.frames + " frames");
+    }
+}
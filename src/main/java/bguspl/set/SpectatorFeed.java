@@ -0,0 +1,449 @@
+package bguspl.set;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Broadcasts the game to spectators over a local socket. The feed keeps its own copy of the table and scoreboard,
+ * built from the user interface events, and turns every event that changes it into a small binary delta (events
+ * that change nothing are not sent). A viewer that connects first gets a snapshot of the whole state, then the deltas.
+ * <p>
+ * Every delta is encoded once into a read-only buffer and queued to each viewer as a duplicate of it (sharing the
+ * bytes), and a single "spectator-feed" thread writes to all the viewers with non-blocking channels, so the game
+ * threads never wait for a viewer. A viewer more than MAX_PENDING_BYTES behind is disconnected. While nobody watches,
+ * the state is still kept but no deltas are encoded.
+ * <p>
+ * Frames (big endian): int length (of the rest of the frame), byte type, then by type:
+ * <ul>
+ * <li>SNAPSHOT: short version, short tableSize, short players, short playerWords; per slot: short card (-1 for none)
+ * and playerWords longs of token bits; per player: int score, long freeze; byte timer mode, long timer millis;
+ * short winners (-1 before the end of the game) followed by the winners' ids as shorts.</li>
+ * <li>CARD: short slot, short card (-1 when the card was removed).</li>
+ * <li>TOKENS: short slot, playerWords longs (bit p set iff player p has a token on the slot).</li>
+ * <li>SCORE: short player, int score.</li>
+ * <li>FREEZE: short player, long millis.</li>
+ * <li>TIMER: byte mode (TIMER_COUNTDOWN, TIMER_WARN or TIMER_ELAPSED), long millis. The timer was reset to millis
+ * when the frame was sent (the snapshot has its value when the snapshot was taken) and counts by itself from there.</li>
+ * <li>WINNERS: short count, the winners' ids as shorts.</li>
+ * </ul>
+ */
+public class SpectatorFeed implements UserInterface, Closeable {
+
+    public static final short VERSION = 1;
+
+    public static final byte SNAPSHOT = 0;
+    public static final byte CARD = 1;
+    public static final byte TOKENS = 2;
+    public static final byte SCORE = 3;
+    public static final byte FREEZE = 4;
+    public static final byte TIMER = 5;
+    public static final byte WINNERS = 6;
+
+    public static final byte TIMER_NONE = 0;
+    public static final byte TIMER_COUNTDOWN = 1;
+    public static final byte TIMER_WARN = 2;
+    public static final byte TIMER_ELAPSED = 3;
+
+    /**
+     * The most bytes queued for a single viewer before it is disconnected.
+     */
+    private static final int MAX_PENDING_BYTES = 1 << 20;
+
+    private final Logger logger;
+    private final UserInterface ui;
+    private final int tableSize;
+    private final int players;
+    private final int playerWords;
+
+    /*
+     * The state as seen by the spectators (guarded by this)
+     */
+    private final int[] cards;
+    private final long[] tokens; // slot * playerWords + word
+    private final int[] scores;
+    private final long[] freezes;
+    private byte timerMode = TIMER_NONE;
+    private long timerMillis;
+    private long timerSetAt;
+    private int[] winners;
+
+    /**
+     * The deltas encoded since the feed thread last took them (guarded by this).
+     */
+    private final Queue<ByteBuffer> outbox = new ArrayDeque<>();
+
+    /**
+     * The number of viewers connected (guarded by this, deltas are encoded only when positive).
+     */
+    private int viewers;
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private volatile boolean running = true;
+    private Thread thread;
+
+    private static class Viewer {
+        private final SocketChannel channel;
+        private final Queue<ByteBuffer> pending = new ArrayDeque<>();
+        private long pendingBytes;
+
+        private Viewer(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Opens the feed's socket on the loopback address.
+     *
+     * @param logger - the logger.
+     * @param config - the game configuration.
+     * @param port   - the port to listen on (0 for any free port, see port()).
+     * @param ui     - the user interface to forward every call to (null for none).
+     */
+    public SpectatorFeed(Logger logger, Config config, int port, UserInterface ui) throws IOException {
+        this.logger = logger;
+        this.ui = ui;
+        tableSize = config.tableSize;
+        players = config.players;
+        playerWords = config.playerWords;
+        cards = new int[tableSize];
+        Arrays.fill(cards, -1);
+        tokens = new long[tableSize * playerWords];
+        scores = new int[players];
+        freezes = new long[players];
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * @return - the port the feed listens on.
+     */
+    public int port() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Starts the thread serving the viewers.
+     */
+    public void start() {
+        thread = new Thread(this::serve, "spectator-feed");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Sends what is still queued (as far as the viewers take it without blocking) and disconnects everyone.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        if (thread != null)
+            try {
+                thread.join(1000);
+            } catch (InterruptedException ignored) {
+            }
+        else shutdown(new ArrayList<>());
+    }
+
+    private void serve() {
+        List<Viewer> connected = new ArrayList<>();
+        List<ByteBuffer> frames = new ArrayList<>();
+        try {
+            while (running) {
+                selector.select();
+                wakeupPending.set(false);
+                List<Viewer> joined = new ArrayList<>();
+                for (Iterator<SelectionKey> keys = selector.selectedKeys().iterator(); keys.hasNext(); ) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        SocketChannel channel = server.accept();
+                        if (channel == null) continue;
+                        channel.configureBlocking(false);
+                        Viewer viewer = new Viewer(channel);
+                        channel.register(selector, SelectionKey.OP_READ, viewer);
+                        joined.add(viewer);
+                    } else if (key.isReadable() && !drainInput((Viewer) key.attachment())) {
+                        disconnect((Viewer) key.attachment(), connected);
+                    }
+                }
+                ByteBuffer snapshot = null;
+                synchronized (this) {
+                    frames.addAll(outbox);
+                    outbox.clear();
+                    if (!joined.isEmpty()) {
+                        snapshot = encodeSnapshot();
+                        viewers += joined.size();
+                    }
+                }
+                for (Viewer viewer : connected)
+                    for (ByteBuffer frame : frames) enqueue(viewer, frame);
+                frames.clear();
+                for (Viewer viewer : joined) {
+                    enqueue(viewer, snapshot);
+                    connected.add(viewer);
+                    logger.info("spectator connected: " + viewer.channel.getRemoteAddress());
+                }
+                for (Viewer viewer : new ArrayList<>(connected))
+                    if (viewer.pendingBytes > MAX_PENDING_BYTES || !flush(viewer)) disconnect(viewer, connected);
+            }
+            synchronized (this) {
+                frames.addAll(outbox);
+                outbox.clear();
+            }
+            for (Viewer viewer : connected)
+                for (ByteBuffer frame : frames) enqueue(viewer, frame);
+        } catch (IOException e) {
+            logger.severe("spectator feed failed: " + e);
+        } finally {
+            shutdown(connected);
+        }
+    }
+
+    private void shutdown(List<Viewer> connected) {
+        for (Viewer viewer : connected) {
+            flush(viewer);
+            closeQuietly(viewer.channel);
+        }
+        closeQuietly(server);
+        closeQuietly(selector);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void enqueue(Viewer viewer, ByteBuffer frame) {
+        viewer.pending.add(frame.duplicate()); // shares the encoded bytes, with a position of its own
+        viewer.pendingBytes += frame.remaining();
+    }
+
+    /**
+     * Writes as much as the viewer takes without blocking.
+     *
+     * @return - false iff the viewer is gone.
+     */
+    private boolean flush(Viewer viewer) {
+        try {
+            while (!viewer.pending.isEmpty()) {
+                ByteBuffer frame = viewer.pending.peek();
+                viewer.pendingBytes -= viewer.channel.write(frame);
+                if (frame.hasRemaining()) break;
+                viewer.pending.remove();
+            }
+            SelectionKey key = viewer.channel.keyFor(selector);
+            if (key != null && key.isValid())
+                key.interestOps(viewer.pending.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Discards whatever a viewer sends.
+     *
+     * @return - false iff the viewer closed the connection.
+     */
+    private static boolean drainInput(Viewer viewer) {
+        ByteBuffer ignored = ByteBuffer.allocate(256);
+        try {
+            int read;
+            while ((read = viewer.channel.read(ignored)) > 0) ignored.clear();
+            return read == 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void disconnect(Viewer viewer, List<Viewer> connected) {
+        if (connected.remove(viewer))
+            synchronized (this) {
+                viewers--;
+            }
+        closeQuietly(viewer.channel);
+        logger.info("spectator disconnected" + (viewer.pendingBytes > MAX_PENDING_BYTES ? " (too slow)" : ""));
+    }
+
+    /**
+     * Queues a delta for the viewers (only called while someone is watching) and wakes the feed thread up once.
+     */
+    private void publish(ByteBuffer frame) {
+        frame.flip();
+        outbox.add(frame.asReadOnlyBuffer());
+        if (!wakeupPending.getAndSet(true)) selector.wakeup();
+    }
+
+    private static ByteBuffer frame(byte type, int size) {
+        ByteBuffer frame = ByteBuffer.allocate(5 + size);
+        frame.putInt(1 + size).put(type);
+        return frame;
+    }
+
+    private ByteBuffer encodeSnapshot() {
+        int size = 8 + tableSize * (2 + 8 * playerWords) + players * 12 + 9 + 2 + (winners == null ? 0 : 2 * winners.length);
+        ByteBuffer frame = frame(SNAPSHOT, size);
+        frame.putShort(VERSION).putShort((short) tableSize).putShort((short) players).putShort((short) playerWords);
+        for (int slot = 0; slot < tableSize; slot++) {
+            frame.putShort((short) cards[slot]);
+            for (int word = 0; word < playerWords; word++) frame.putLong(tokens[slot * playerWords + word]);
+        }
+        for (int player = 0; player < players; player++) frame.putInt(scores[player]).putLong(freezes[player]);
+        long passed = System.currentTimeMillis() - timerSetAt;
+        long millis = timerMode == TIMER_ELAPSED ? timerMillis + passed
+                : timerMode == TIMER_NONE ? timerMillis : Math.max(0, timerMillis - passed);
+        frame.put(timerMode).putLong(millis);
+        putWinners(frame);
+        frame.flip();
+        return frame.asReadOnlyBuffer();
+    }
+
+    private void putWinners(ByteBuffer frame) {
+        frame.putShort((short) (winners == null ? -1 : winners.length));
+        if (winners != null) for (int winner : winners) frame.putShort((short) winner);
+    }
+
+    private synchronized void setCard(int slot, int card) {
+        if (cards[slot] == card) return;
+        cards[slot] = card;
+        if (viewers > 0) publish(frame(CARD, 4).putShort((short) slot).putShort((short) card));
+    }
+
+    /**
+     * Sets (or clears) the token bits of the given players on a slot.
+     */
+    private synchronized void setTokens(int slot, int player, boolean on) {
+        int base = slot * playerWords;
+        boolean changed = false;
+        for (int word = 0; word < playerWords; word++) {
+            long bits = player < 0 ? (on ? -1L : 0L)
+                    : word == player >>> 6 ? (on ? tokens[base + word] | 1L << player : tokens[base + word] & ~(1L << player))
+                    : tokens[base + word];
+            changed |= bits != tokens[base + word];
+            tokens[base + word] = bits;
+        }
+        if (!changed || viewers == 0) return;
+        ByteBuffer frame = frame(TOKENS, 2 + 8 * playerWords).putShort((short) slot);
+        for (int word = 0; word < playerWords; word++) frame.putLong(tokens[base + word]);
+        publish(frame);
+    }
+
+    private synchronized void setTimer(byte mode, long millis) {
+        timerSetAt = System.currentTimeMillis();
+        timerMode = mode;
+        timerMillis = millis;
+        if (viewers > 0) publish(frame(TIMER, 9).put(mode).putLong(millis));
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        setCard(slot, card);
+        if (ui != null) ui.placeCard(card, slot);
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        setCard(slot, -1);
+        if (ui != null) ui.removeCard(slot);
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        setTokens(slot, player, true);
+        if (ui != null) ui.placeToken(player, slot);
+    }
+
+    @Override
+    public void removeTokens() {
+        for (int slot = 0; slot < tableSize; slot++) setTokens(slot, -1, false);
+        if (ui != null) ui.removeTokens();
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        setTokens(slot, -1, false);
+        if (ui != null) ui.removeTokens(slot);
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        setTokens(slot, player, false);
+        if (ui != null) ui.removeToken(player, slot);
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        setTimer(warn ? TIMER_WARN : TIMER_COUNTDOWN, millies);
+        if (ui != null) ui.setCountdown(millies, warn);
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        setTimer(TIMER_ELAPSED, millies);
+        if (ui != null) ui.setElapsed(millies);
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        synchronized (this) {
+            if (freezes[player] != millies) {
+                freezes[player] = millies;
+                if (viewers > 0) publish(frame(FREEZE, 10).putShort((short) player).putLong(millies));
+            }
+        }
+        if (ui != null) ui.setFreeze(player, millies);
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        synchronized (this) {
+            if (scores[player] != score) {
+                scores[player] = score;
+                if (viewers > 0) publish(frame(SCORE, 6).putShort((short) player).putInt(score));
+            }
+        }
+        if (ui != null) ui.setScore(player, score);
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        synchronized (this) {
+            winners = players.clone();
+            if (viewers > 0) {
+                ByteBuffer frame = frame(WINNERS, 2 + 2 * winners.length);
+                putWinners(frame);
+                publish(frame);
+            }
+        }
+        if (ui != null) ui.announceWinner(players);
+    }
+
+    @Override
+    public void dispose() {
+        if (ui != null) ui.dispose();
+    }
+}
@@ -0,0 +1,79 @@
+package bguspl.set;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures the startup time of the game: the time from launching a new JVM running Main until the first cards are
+ * dealt (with Main's startup probe, which ends the game right away).
+ * <p>
+ * Usage: java -cp ... bguspl.set.StartupBenchmark [config file] [runs]
+ * <p>
+ * Each run is measured with the default class data sharing archive and, if the archive built by the appcds profile
+ * (mvn -Pappcds package) exists, with that archive too. The JVMs are launched with the same class path, and are
+ * headless if this JVM is.
+ */
+public class StartupBenchmark {
+
+    /**
+     * The application class data sharing archive built by the appcds profile.
+     */
+    private static final String ARCHIVE = System.getProperty("bguspl.set.cdsArchive", "target/setgame.jsa");
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        String configFile = args.length > 0 ? args[0] : "config.properties";
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        List<String[]> variants = new ArrayList<>();
+        variants.add(new String[]{"default CDS"});
+        if (new File(ARCHIVE).isFile()) variants.add(new String[]{"AppCDS", "-XX:SharedArchiveFile=" + ARCHIVE});
+        else System.out.println("no AppCDS archive at " + ARCHIVE + " (build it with: mvn -Pappcds package)");
+
+        for (String[] variant : variants) {
+            long[] millis = new long[runs];
+            run(variant, configFile); // warm up the file system cache
+            for (int i = 0; i < runs; i++) millis[i] = run(variant, configFile);
+            Arrays.sort(millis);
+            System.out.printf("%-12s runs=%d min=%dms median=%dms p90=%dms max=%dms%n", variant[0], runs, millis[0],
+                    millis[runs / 2], millis[Math.min(runs - 1, (int) Math.ceil(runs * 0.9) - 1)], millis[runs - 1]);
+        }
+    }
+
+    /**
+     * Launches a single game and measures the time until it is running.
+     *
+     * @param variant    - the variant name followed by the extra JVM options.
+     * @param configFile - the configuration file of the game.
+     * @return - the startup time in milliseconds.
+     */
+    private static long run(String[] variant, String configFile) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(Arrays.asList(variant).subList(1, variant.length));
+        command.add("-D" + Main.STARTUP_PROBE + "=true");
+        if (Boolean.getBoolean("java.awt.headless")) command.add("-Djava.awt.headless=true");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Main.class.getName());
+        command.add(configFile);
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        long startup = -1;
+        try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            for (String line = output.readLine(); line != null; line = output.readLine())
+                if (startup < 0 && line.contains(Main.STARTUP_PROBE_READY))
+                    startup = (System.nanoTime() - start) / 1000000;
+        }
+        process.waitFor();
+        if (startup < 0) throw new IllegalStateException("the game did not report its startup: " + command);
+        return startup;
+    }
+}
@@ -0,0 +1,302 @@
+package bguspl.set;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A user interface for terminals (e.g. on hosts without a display): draws the grid, the tokens, the scoreboard and
+ * the timer with ANSI escape sequences. The calls only update the state; a "terminal-ui" thread draws it at most
+ * FRAME_MILLIS apart, rewriting only the cells whose text changed since the last frame, and writes each frame at once.
+ * The timer counts by itself between the resets, so while it runs the thread draws a frame every FRAME_MILLIS (which
+ * rewrites the timer cell alone, when its text changed).
+ * <p>
+ * Every slot takes two lines of a fixed width cell: the card's features and the numbers of the players with a token on
+ * it. The timer, a line per player (the name, the score and the freeze in red) and the winners follow the grid.
+ */
+public class TerminalUserInterface implements UserInterface {
+
+    /**
+     * The minimal time between frames.
+     */
+    public static final long FRAME_MILLIS = 100;
+
+    private static final String ESC = "\u001b[";
+    private static final String RED = ESC + "31m";
+    private static final String RESET = ESC + "0m";
+
+    private static final int TIMER_NONE = 0;
+    private static final int TIMER_COUNTDOWN = 1;
+    private static final int TIMER_ELAPSED = 2;
+
+    private final Config config;
+    private final Util util;
+    private final PrintStream out;
+
+    private final int slotWidth;
+    private final int lineWidth;
+
+    /*
+     * The state, guarded by this.
+     */
+    private final String[] cards; // the features of the card in each slot (null for none)
+    private final boolean[][] tokens; // [slot][player]
+    private final int[] scores;
+    private final long[] freezes;
+    private int timerMode = TIMER_NONE;
+    private long timerMillis;
+    private long timerSetAt;
+    private int[] winners;
+    private boolean dirty = true;
+    private boolean disposed;
+
+    /**
+     * The text of every cell as last drawn (null before the first frame).
+     */
+    private String[] shown;
+
+    private final Thread renderer;
+
+    /**
+     * @param config - the game configuration.
+     * @param util   - converts cards to features.
+     * @param out    - the terminal.
+     */
+    public TerminalUserInterface(Config config, Util util, PrintStream out) {
+        this.config = config;
+        this.util = util;
+        this.out = out;
+        slotWidth = Math.max(config.featureCount, 6) + 2;
+        lineWidth = Math.max(slotWidth * config.columns, 40);
+        cards = new String[config.tableSize];
+        tokens = new boolean[config.tableSize][config.players];
+        scores = new int[config.players];
+        freezes = new long[config.players];
+        renderer = new Thread(this::renderLoop, "terminal-ui");
+        renderer.setDaemon(true);
+        renderer.start();
+    }
+
+    /**
+     * Wakes the renderer up (caller holds the lock).
+     */
+    private void changed() {
+        dirty = true;
+        notifyAll();
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        int[] features = util.cardToFeatures(card);
+        StringBuilder sb = new StringBuilder(features.length);
+        for (int feature : features) sb.append(feature);
+        synchronized (this) {
+            cards[slot] = sb.toString();
+            changed();
+        }
+    }
+
+    @Override
+    public synchronized void removeCard(int slot) {
+        cards[slot] = null;
+        changed();
+    }
+
+    @Override
+    public synchronized void placeToken(int player, int slot) {
+        tokens[slot][player] = true;
+        changed();
+    }
+
+    @Override
+    public synchronized void removeTokens() {
+        for (boolean[] slot : tokens) Arrays.fill(slot, false);
+        changed();
+    }
+
+    @Override
+    public synchronized void removeTokens(int slot) {
+        Arrays.fill(tokens[slot], false);
+        changed();
+    }
+
+    @Override
+    public synchronized void removeToken(int player, int slot) {
+        tokens[slot][player] = false;
+        changed();
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        setTimer(TIMER_COUNTDOWN, millies);
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        setTimer(TIMER_ELAPSED, millies);
+    }
+
+    private synchronized void setTimer(int mode, long millies) {
+        timerMode = mode;
+        timerMillis = millies;
+        timerSetAt = System.currentTimeMillis();
+        changed();
+    }
+
+    @Override
+    public synchronized void setFreeze(int player, long millies) {
+        freezes[player] = millies;
+        changed();
+    }
+
+    @Override
+    public synchronized void setScore(int player, int score) {
+        scores[player] = score;
+        changed();
+    }
+
+    @Override
+    public synchronized void announceWinner(int[] players) {
+        winners = players.clone();
+        changed();
+    }
+
+    /**
+     * Draws the last frame, leaves the cursor below it and stops drawing.
+     */
+    @Override
+    public void dispose() {
+        synchronized (this) {
+            disposed = true;
+            notifyAll();
+        }
+        try {
+            renderer.join(1000);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    private void renderLoop() {
+        boolean last = false;
+        while (!last) {
+            String[] cells;
+            synchronized (this) {
+                // the timer counts by itself, everything else changes by calls only
+                while (!dirty && !disposed && !ticking()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                last = disposed;
+                dirty = false;
+                cells = cells();
+            }
+            draw(cells, last);
+            if (!last)
+                try {
+                    Thread.sleep(FRAME_MILLIS);
+                } catch (InterruptedException ignored) {
+                }
+        }
+    }
+
+    /**
+     * The text of every cell: two per slot, the timer, one per player and the winners (caller holds the lock).
+     */
+    private String[] cells() {
+        String[] cells = new String[2 * config.tableSize + 2 + config.players];
+        for (int slot = 0; slot < config.tableSize; slot++) {
+            cells[2 * slot] = cards[slot] == null ? "" : "[" + cards[slot] + "]";
+            StringBuilder sb = new StringBuilder(" ");
+            for (int player = 0; player < config.players; player++)
+                if (tokens[slot][player]) sb.append(player + 1).append(' ');
+            cells[2 * slot + 1] = sb.toString();
+        }
+        int cell = 2 * config.tableSize;
+        long now = System.currentTimeMillis();
+        switch (timerMode) {
+            case TIMER_COUNTDOWN:
+                long remaining = Math.max(0, timerMillis - (now - timerSetAt));
+                cells[cell] = remaining > config.turnTimeoutWarningMillis ? "remaining " + (remaining + 999) / 1000 + "s"
+                        : RED + String.format("remaining %.1fs", remaining / 1000.0);
+                break;
+            case TIMER_ELAPSED:
+                cells[cell] = "elapsed " + (timerMillis + now - timerSetAt) / 1000 + "s";
+                break;
+            default:
+                cells[cell] = "";
+        }
+        for (int player = 0; player < config.players; player++) {
+            String line = config.playerNames[player] + ": " + scores[player];
+            cells[++cell] = freezes[player] > 0 ? RED + line + " (frozen " + (freezes[player] + 999) / 1000 + "s)" : line;
+        }
+        cells[++cell] = winners == null ? "" : winners();
+        return cells;
+    }
+
+    /**
+     * True iff the timer display changes without calls (caller holds the lock).
+     */
+    private boolean ticking() {
+        return timerMode == TIMER_ELAPSED
+                || timerMode == TIMER_COUNTDOWN && System.currentTimeMillis() - timerSetAt < timerMillis + FRAME_MILLIS;
+    }
+
+    private String winners() {
+        if (winners.length == 1) return "THE WINNER IS: " + config.playerNames[winners[0]] + "!!!";
+        StringBuilder sb = new StringBuilder("IT IS A DRAW:");
+        for (int winner : winners) sb.append(' ').append(config.playerNames[winner]);
+        return sb.toString();
+    }
+
+    /**
+     * Writes the cells that changed since the last frame in one write.
+     */
+    private void draw(String[] cells, boolean last) {
+        StringBuilder frame = new StringBuilder();
+        if (shown == null) {
+            frame.append(ESC).append("?25l").append(ESC).append("2J"); // hide the cursor and clear the screen
+            shown = new String[cells.length];
+        }
+        for (int cell = 0; cell < cells.length; cell++) {
+            if (cells[cell].equals(shown[cell])) continue;
+            shown[cell] = cells[cell];
+            int row;
+            int column;
+            int width;
+            if (cell < 2 * config.tableSize) {
+                int slot = cell / 2;
+                row = 2 * (slot / config.columns) + cell % 2 + 1;
+                column = slotWidth * (slot % config.columns) + 1;
+                width = slotWidth;
+            } else {
+                row = 2 * config.rows + 2 + cell - 2 * config.tableSize;
+                column = 1;
+                width = lineWidth;
+            }
+            frame.append(ESC).append(row).append(';').append(column).append('H').append(pad(cells[cell], width));
+        }
+        if (last) frame.append(ESC).append(2 * config.rows + 4 + config.players).append(";1H").append(ESC).append("?25h");
+        if (frame.length() == 0) return;
+        byte[] bytes = frame.toString().getBytes(StandardCharsets.UTF_8);
+        out.write(bytes, 0, bytes.length);
+        out.flush();
+    }
+
+    /**
+     * Cuts or pads the text to the width of its cell (escape sequences take no room), resetting its color.
+     */
+    private static String pad(String text, int width) {
+        String color = "";
+        if (text.startsWith(ESC)) {
+            int end = text.indexOf('m') + 1;
+            color = text.substring(0, end);
+            text = text.substring(end);
+        }
+        if (text.length() >= width) text = text.substring(0, width - 1) + ' ';
+        StringBuilder sb = new StringBuilder(color.length() + width + RESET.length()).append(color).append(text);
+        while (sb.length() < color.length() + width) sb.append(' ');
+        return color.isEmpty() ? sb.toString() : sb.append(RESET).toString();
+    }
+}
@@ -0,0 +1,290 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Runs many headless games between computer players in parallel and reports statistics per bot mix.
+ * Used to tune the configuration (e.g. penaltyFreezeMillis, turnTimeoutMillis) for fair play.
+ * <p>
+ * Usage: java -cp ... bguspl.set.Tournament [config file]
+ * <p>
+ * On top of the regular configuration fields the following are read:
+ * TournamentGames (total number of games), TournamentThreads (games run at the same time, default: the number of
+ * cores), TournamentMixes (bot mixes separated by ';', each a comma separated list of BotStrategies; games are
+ * assigned to the mixes round robin), TournamentGameTimeoutSeconds (games running longer are stopped) and
+ * TournamentReport (the file the summary is written to). The player statistics of every game are added to
+ * StatsFile; unless PlayerNames is set, the players are named after their strategies, so the statistics add up
+ * per strategy. The games are never checkpointed nor fed to spectators (CheckpointFile and SpectatorPort are
+ * ignored), while WatchdogSeconds and WatchdogRecover apply to every game.
+ */
+public class Tournament {
+
+    /**
+     * A user interface that only remembers the announced winners.
+     */
+    private static class ResultRecorder implements UserInterface {
+
+        private volatile int[] winners = new int[0];
+
+        @Override
+        public void placeCard(int card, int slot) {}
+
+        @Override
+        public void removeCard(int slot) {}
+
+        @Override
+        public void placeToken(int player, int slot) {}
+
+        @Override
+        public void removeTokens() {}
+
+        @Override
+        public void removeTokens(int slot) {}
+
+        @Override
+        public void removeToken(int player, int slot) {}
+
+        @Override
+        public void setCountdown(long millies, boolean warn) {}
+
+        @Override
+        public void setElapsed(long millies) {}
+
+        @Override
+        public void setFreeze(int player, long millies) {}
+
+        @Override
+        public void setScore(int player, int score) {}
+
+        @Override
+        public void announceWinner(int[] players) {
+            winners = players.clone();
+        }
+
+        @Override
+        public void dispose() {}
+    }
+
+    /**
+     * The outcome of a single game.
+     */
+    private static class GameResult {
+        int mix;
+        long durationMillis;
+        boolean timedOut;
+        int[] scores;
+        int[] winners;
+        long[] penalties;
+        long claims;
+        long badClaims;
+    }
+
+    /**
+     * The aggregated outcome of all the games of one bot mix.
+     */
+    private static class MixStats {
+        final String[] strategies;
+        int games;
+        int timeouts;
+        long durationMillis;
+        long claims;
+        long badClaims;
+        final double[] wins;
+        final long[] points;
+        final long[] penalties;
+
+        MixStats(String[] strategies) {
+            this.strategies = strategies;
+            wins = new double[strategies.length];
+            points = new long[strategies.length];
+            penalties = new long[strategies.length];
+        }
+
+        void add(GameResult result) {
+            games++;
+            if (result.timedOut) timeouts++;
+            durationMillis += result.durationMillis;
+            claims += result.claims;
+            badClaims += result.badClaims;
+            for (int winner : result.winners) wins[winner] += 1.0 / result.winners.length; // ties share the win
+            for (int i = 0; i < strategies.length; i++) {
+                points[i] += result.scores[i];
+                penalties[i] += result.penalties[i];
+            }
+        }
+
+        String report() {
+            StringBuilder sb = new StringBuilder();
+            double seconds = Math.max(1, durationMillis) / 1000.0;
+            sb.append(String.format("mix [%s]: games=%d timeouts=%d avg duration=%.2fs claims/s=%.2f penalty rate=%.1f%%%n",
+                    String.join(",", strategies), games, timeouts, seconds / Math.max(1, games), claims / seconds,
+                    100.0 * badClaims / Math.max(1, claims)));
+            for (int i = 0; i < strategies.length; i++)
+                sb.append(String.format("  player %d (%s): win rate=%.1f%% avg points=%.2f avg penalties=%.2f%n",
+                        i + 1, strategies[i], 100.0 * wins[i] / Math.max(1, games),
+                        (double) points[i] / Math.max(1, games), (double) penalties[i] / Math.max(1, games)));
+            return sb.toString();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        Logger logger = Logger.getLogger("SetGameTournament");
+        String filename = args.length > 0 ? args[0] : "config.properties";
+        Properties base = Config.loadProperties(filename, logger);
+
+        int games = Integer.parseInt(base.getProperty("TournamentGames", "10"));
+        int threads = Integer.parseInt(base.getProperty("TournamentThreads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        long timeoutMillis = (long) (Double.parseDouble(base.getProperty("TournamentGameTimeoutSeconds", "600")) * 1000.0);
+        String reportFile = base.getProperty("TournamentReport", "./logs/tournament.txt");
+        String[] mixes = base.getProperty("TournamentMixes", "random,random").split(";");
+
+        MixStats[] stats = new MixStats[mixes.length];
+        for (int i = 0; i < mixes.length; i++) {
+            String[] strategies = mixes[i].split(",");
+            for (int j = 0; j < strategies.length; j++) strategies[j] = strategies[j].trim().toLowerCase();
+            stats[i] = new MixStats(strategies);
+        }
+
+        String statsFile = base.getProperty("StatsFile", "").trim();
+        PlayerStatsStore store = openStats(statsFile, logger);
+
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        List<Future<GameResult>> results = new ArrayList<>();
+        for (int game = 0; game < games; game++) {
+            final int id = game, mix = game % mixes.length;
+            results.add(pool.submit(() -> playGame(id, mix, stats[mix].strategies, base, timeoutMillis, store)));
+        }
+        for (Future<GameResult> result : results) {
+            try {
+                GameResult r = result.get();
+                stats[r.mix].add(r);
+            } catch (ExecutionException e) {
+                logger.severe("game failed: " + e.getCause());
+            }
+        }
+        pool.shutdown();
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("tournament: %d games on %d threads in %.2fs%n", games, threads,
+                (System.currentTimeMillis() - start) / 1000.0));
+        for (MixStats mix : stats) report.append(mix.report());
+        SetCache.shared().forEach((features, cache) ->
+                report.append("set cache (").append(features).append(" features): ").append(cache).append('\n'));
+        if (store != null) {
+            try {
+                report.append("player statistics (all games in ").append(statsFile).append("):\n").append(store.report());
+                store.close();
+            } catch (IOException e) {
+                logger.severe("cannot read the player statistics " + statsFile + ": " + e);
+            }
+        }
+        System.out.print(report);
+        try {
+            File parent = new File(reportFile).getAbsoluteFile().getParentFile();
+            //noinspection ResultOfMethodCallIgnored
+            if (parent != null) parent.mkdirs();
+            Files.write(Paths.get(reportFile), report.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logger.severe("cannot write the tournament report to " + reportFile + ": " + e);
+        }
+        System.exit(0); // do not wait for the threads of games that had to be stopped
+    }
+
+    /**
+     * @return - the player statistics store (null if statsFile is empty or cannot be opened).
+     */
+    private static PlayerStatsStore openStats(String statsFile, Logger logger) {
+        if (statsFile.isEmpty()) return null;
+        try {
+            return new PlayerStatsStore(statsFile);
+        } catch (IOException e) {
+            logger.severe("cannot open the player statistics " + statsFile + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Creates and runs a single headless game between computer players.
+     *
+     * @param game          - the game number (used for thread names).
+     * @param mix           - the index of the bot mix.
+     * @param strategies    - the strategy of each player.
+     * @param base          - the configuration properties.
+     * @param timeoutMillis - the time after which the game is stopped.
+     * @param store         - the player statistics store (null for none).
+     * @return - the result of the game.
+     */
+    private static GameResult playGame(int game, int mix, String[] strategies, Properties base, long timeoutMillis,
+                                       PlayerStatsStore store) throws InterruptedException, IOException {
+
+        Properties properties = new Properties();
+        properties.putAll(base);
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("ComputerPlayers", String.valueOf(strategies.length));
+        properties.setProperty("BotStrategies", String.join(",", strategies));
+        properties.setProperty("Hints", "False");
+        // the games run side by side: none may share a checkpoint file or a spectator port with another game
+        properties.setProperty("CheckpointFile", "");
+        properties.setProperty("SpectatorPort", "0");
+        // the watchdog keys are kept, every game watches (and recovers) its own threads
+        if (!base.containsKey("PlayerNames")) properties.setProperty("PlayerNames", String.join(",", strategies));
+        if (!base.containsKey("LogLevel")) properties.setProperty("LogLevel", "OFF");
+
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        Config config = new Config(logger, properties);
+        ResultRecorder recorder = new ResultRecorder();
+        Metrics metrics = new Metrics(true);
+        Env env = new Env(logger, config, recorder, new UtilImpl(config), metrics);
+
+        Player[] players = new Player[config.players];
+        Table table = new Table(env);
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, false);
+
+        long start = System.currentTimeMillis();
+        Thread dealerThread = new Thread(dealer, "dealer-" + game);
+        dealerThread.start();
+        dealerThread.join(timeoutMillis);
+        GameResult result = new GameResult();
+        result.timedOut = dealerThread.isAlive();
+        if (result.timedOut) {
+            dealer.terminate();
+            dealerThread.join(timeoutMillis);
+        }
+
+        result.mix = mix;
+        result.durationMillis = System.currentTimeMillis() - start;
+        result.winners = recorder.winners;
+        result.scores = new int[players.length];
+        result.penalties = new long[players.length];
+        for (int i = 0; i < players.length; i++) {
+            result.scores[i] = players[i].score();
+            result.penalties[i] = metrics.counter("player." + (i + 1) + ".penalties").sum();
+        }
+        if (store != null && !result.timedOut) store.appendGame(config, players);
+        result.badClaims = metrics.counter("dealer.claims.bad").sum();
+        result.claims = result.badClaims + metrics.counter("dealer.claims.good").sum()
+                + metrics.counter("dealer.claims.stale").sum();
+        return result;
+    }
+}
@@ -44,14 +44,17 @@ public interface UserInterface {
     void removeToken(int player, int slot);
 
     /**
-     * Set the countdown time to the specified number of milliseconds.
+     * Set the countdown time to the specified number of milliseconds. The display keeps counting down to 0 by itself
+     * (painted in red and showing milliseconds for the last config.turnTimeoutWarningMillis), so this is only called
+     * when the countdown is reset.
      * @param millies - the milliseconds to be shown.
      * @param warn    - if true, the timer will be painted in red and will display milliseconds
      */
     void setCountdown(long millies, boolean warn);
 
     /**
-     * Set the elapsed time to the specified number of milliseconds.
+     * Set the elapsed time to the specified number of milliseconds. The display keeps counting up from there by
+     * itself, so this is only called when the elapsed time is reset.
      * @param millies - the milliseconds to be shown.
      */
     void setElapsed(long millies);
@@ -15,8 +15,6 @@ public class UserInterfaceDecorator implements UserInterface {
         this.ui = ui;
         this.logger = logger;
         this.util = util;
-
-        if (ui == null) System.out.println("Running without a user interface. Check logs.");
     }
 
     @Override
@@ -63,8 +61,7 @@ public class UserInterfaceDecorator implements UserInterface {
 
     @Override
     public void setCountdown(long millies, boolean warn) {
-        if (!warn || millies % 1000L == 0L)
-            logger.severe("updating countdown to " + millies);
+        logger.severe("updating countdown to " + millies);
         if (ui != null) ui.setCountdown(millies, warn);
     }
 
@@ -0,0 +1,412 @@
+package bguspl.set;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * A user interface that fans every call out to several sinks (e.g. the log, the Swing window and the spectator feed).
+ * Every sink has its own bounded queue and thread, so the game threads only pay for queueing the call: a slow sink
+ * falls behind on its own instead of slowing the dealer and the players, and what happens when its queue is full is
+ * up to its Overflow policy. Each sink sees the calls in the order they were made.
+ * <p>
+ * Displays use RESYNC: the fan-out keeps the current state of the game (from the calls themselves), and a display
+ * that fell behind skips the calls it had no room for and is then brought up to date from that state.
+ */
+public class UserInterfaceFanOut implements UserInterface, Closeable {
+
+    /**
+     * What a call does when a sink's queue is full.
+     */
+    public enum Overflow {
+        /**
+         * Wait for room (lossless, the caller is slowed down by the sink).
+         */
+        BLOCK,
+        /**
+         * Drop the call (for sinks that can live with gaps, e.g. the log).
+         */
+        DROP,
+        /**
+         * Drop the players' freeze updates, which the next update (a second later) supersedes, and wait for room for
+         * everything else.
+         */
+        DROP_TIMERS,
+        /**
+         * Never wait: once a call finds the queue full, drop the calls until the sink ran the ones queued, then
+         * replay the current state to it (for displays, which must not stall the game but must end up right).
+         */
+        RESYNC
+    }
+
+    /**
+     * The number of calls a sink may fall behind by default.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final long CLOSE_TIMEOUT_MILLIS = 2000;
+
+    private final Logger logger;
+    private final Metrics metrics;
+    private final List<Sink> sinks = new ArrayList<>();
+    private final List<Sink> resyncSinks = new ArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * The current state of the game, for the RESYNC sinks (guarded by itself, also ordering their queues).
+     */
+    private final State state = new State();
+
+    /**
+     * A call that must not be dropped.
+     */
+    private static final boolean STATE = false;
+
+    /**
+     * A call superseded by the next one of its kind.
+     */
+    private static final boolean TIMER = true;
+
+    /**
+     * Ends a sink's thread (after the calls queued before it).
+     */
+    private static final Consumer<UserInterface> STOP = ui -> {
+    };
+
+    private static final Consumer<UserInterface> DISPOSE = UserInterface::dispose;
+
+    /**
+     * The state of the game as last told to the user interfaces, replayed to a RESYNC sink that dropped calls.
+     */
+    private static class State implements UserInterface {
+        final Map<Integer, Integer> cards = new TreeMap<>();
+        final Map<Integer, Set<Integer>> tokens = new TreeMap<>();
+        final Map<Integer, Integer> scores = new TreeMap<>();
+        final Map<Integer, Long> freezes = new TreeMap<>();
+        Consumer<UserInterface> timer;
+        int[] winners;
+
+        /**
+         * @return - the calls that bring a user interface from any state to this one.
+         */
+        List<Consumer<UserInterface>> snapshot() {
+            List<Consumer<UserInterface>> calls = new ArrayList<>();
+            calls.add(UserInterface::removeTokens);
+            cards.forEach((slot, card) ->
+                    calls.add(card == null ? ui -> ui.removeCard(slot) : ui -> ui.placeCard(card, slot)));
+            tokens.forEach((slot, players) -> {
+                for (int player : players) calls.add(ui -> ui.placeToken(player, slot));
+            });
+            scores.forEach((player, score) -> calls.add(ui -> ui.setScore(player, score)));
+            freezes.forEach((player, millies) -> calls.add(ui -> ui.setFreeze(player, millies)));
+            if (timer != null) calls.add(timer);
+            if (winners != null) {
+                int[] players = winners;
+                calls.add(ui -> ui.announceWinner(players));
+            }
+            return calls;
+        }
+
+        @Override
+        public void placeCard(int card, int slot) {
+            cards.put(slot, card);
+        }
+
+        @Override
+        public void removeCard(int slot) {
+            cards.put(slot, null); // replayed too, the sink may still show a card there
+        }
+
+        @Override
+        public void placeToken(int player, int slot) {
+            tokens.computeIfAbsent(slot, s -> new TreeSet<>()).add(player);
+        }
+
+        @Override
+        public void removeTokens() {
+            tokens.clear();
+        }
+
+        @Override
+        public void removeTokens(int slot) {
+            tokens.remove(slot);
+        }
+
+        @Override
+        public void removeToken(int player, int slot) {
+            Set<Integer> players = tokens.get(slot);
+            if (players != null) players.remove(player);
+        }
+
+        @Override
+        public void setCountdown(long millies, boolean warn) {
+            long setAt = System.currentTimeMillis();
+            timer = ui -> ui.setCountdown(Math.max(0, millies - (System.currentTimeMillis() - setAt)), warn);
+        }
+
+        @Override
+        public void setElapsed(long millies) {
+            long setAt = System.currentTimeMillis();
+            timer = ui -> ui.setElapsed(millies + System.currentTimeMillis() - setAt);
+        }
+
+        @Override
+        public void setFreeze(int player, long millies) {
+            freezes.put(player, millies);
+        }
+
+        @Override
+        public void setScore(int player, int score) {
+            scores.put(player, score);
+        }
+
+        @Override
+        public void announceWinner(int[] players) {
+            winners = players;
+        }
+
+        @Override
+        public void dispose() {
+        }
+    }
+
+    private class Sink implements Runnable {
+        final String name;
+        final UserInterface ui;
+        final Overflow overflow;
+        final BlockingQueue<Consumer<UserInterface>> queue;
+        final Metrics.Counter dropped;
+        final Thread thread;
+
+        /**
+         * True iff the sink dropped calls it has not been brought up to date for (RESYNC sinks, set under state).
+         */
+        volatile boolean stale;
+
+        Sink(String name, UserInterface ui, Overflow overflow, int capacity) {
+            this.name = name;
+            this.ui = ui;
+            this.overflow = overflow;
+            queue = new ArrayBlockingQueue<>(capacity);
+            dropped = metrics.counter("ui." + name + ".dropped");
+            metrics.gauge("ui." + name + ".queue", queue::size);
+            thread = new Thread(this, "ui-" + name);
+            thread.setDaemon(true);
+        }
+
+        void offer(Consumer<UserInterface> call, boolean timer) {
+            if (overflow == Overflow.RESYNC) {
+                if (stale || !queue.offer(call)) {
+                    stale = true;
+                    dropped.increment();
+                }
+            } else if (overflow == Overflow.BLOCK || overflow == Overflow.DROP_TIMERS && !timer) {
+                boolean interrupted = false;
+                while (true) {
+                    try {
+                        queue.put(call);
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true; // the call is still delivered, the caller sees the interrupt
+                    }
+                }
+                if (interrupted) Thread.currentThread().interrupt();
+            } else if (!queue.offer(call)) dropped.increment();
+        }
+
+        /**
+         * Queues a call whatever the policy, unless the sink is stuck for longer than CLOSE_TIMEOUT_MILLIS.
+         */
+        boolean offerWithin(Consumer<UserInterface> call) {
+            try {
+                return queue.offer(call, CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        /**
+         * Replays the current state, if the sink dropped calls and ran all the ones queued before (or is about to be
+         * disposed of).
+         */
+        void resync(boolean last) {
+            List<Consumer<UserInterface>> snapshot;
+            synchronized (state) {
+                if (!stale || !last && !queue.isEmpty()) return;
+                snapshot = state.snapshot();
+                stale = false;
+            }
+            for (Consumer<UserInterface> call : snapshot) run(call);
+        }
+
+        private void run(Consumer<UserInterface> call) {
+            try {
+                call.accept(ui);
+            } catch (RuntimeException e) {
+                logger.severe("user interface sink " + name + " failed: " + e);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                if (stale) resync(false);
+                Consumer<UserInterface> call;
+                try {
+                    call = queue.take();
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                if (stale && (call == DISPOSE || call == STOP)) resync(true);
+                if (call == STOP) return;
+                run(call);
+            }
+        }
+    }
+
+    /**
+     * @param logger  - the logger (for failing sinks).
+     * @param metrics - the metrics the queue depths and the dropped calls are counted in.
+     */
+    public UserInterfaceFanOut(Logger logger, Metrics metrics) {
+        this.logger = logger;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Adds a sink and starts its thread (before the game makes calls).
+     *
+     * @param name     - the name of the sink (in its thread's name and metrics).
+     * @param ui       - the sink.
+     * @param overflow - what a call does when the sink's queue is full.
+     * @param capacity - the number of calls the sink may fall behind by.
+     * @return - this.
+     */
+    public UserInterfaceFanOut addSink(String name, UserInterface ui, Overflow overflow, int capacity) {
+        Sink sink = new Sink(name, ui, overflow, capacity);
+        sinks.add(sink);
+        if (overflow == Overflow.RESYNC) resyncSinks.add(sink);
+        sink.thread.start();
+        return this;
+    }
+
+    private void fanOut(Consumer<UserInterface> call, boolean timer) {
+        if (closed) return;
+        for (Sink sink : sinks) if (sink.overflow != Overflow.RESYNC) sink.offer(call, timer);
+        if (resyncSinks.isEmpty()) return;
+        synchronized (state) { // the state and the queues see the calls in the same order
+            call.accept(state);
+            for (Sink sink : resyncSinks) sink.offer(call, timer);
+        }
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        fanOut(ui -> ui.placeCard(card, slot), STATE);
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        fanOut(ui -> ui.removeCard(slot), STATE);
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        fanOut(ui -> ui.placeToken(player, slot), STATE);
+    }
+
+    @Override
+    public void removeTokens() {
+        fanOut(UserInterface::removeTokens, STATE);
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        fanOut(ui -> ui.removeTokens(slot), STATE);
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        fanOut(ui -> ui.removeToken(player, slot), STATE);
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        fanOut(ui -> ui.setCountdown(millies, warn), STATE); // sent once a turn, the display counts by itself
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        fanOut(ui -> ui.setElapsed(millies), STATE);
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        fanOut(ui -> ui.setFreeze(player, millies), TIMER);
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        fanOut(ui -> ui.setScore(player, score), STATE);
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        int[] winners = players.clone();
+        fanOut(ui -> ui.announceWinner(winners), STATE);
+    }
+
+    /**
+     * Disposes of every sink once it caught up, and waits (a while) for that.
+     */
+    @Override
+    public void dispose() {
+        if (closed) return;
+        for (Sink sink : sinks) sink.offerWithin(DISPOSE);
+        drain();
+    }
+
+    /**
+     * Lets every sink catch up, then stops its thread (the calls made after closing are dropped).
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        for (Sink sink : sinks) {
+            if (!sink.offerWithin(STOP)) continue;
+            try {
+                sink.thread.join(CLOSE_TIMEOUT_MILLIS);
+            } catch (InterruptedException ignored) {
+            }
+            if (sink.dropped.sum() > 0)
+                logger.warning("user interface sink " + sink.name + " fell behind and dropped " + sink.dropped.sum()
+                        + " calls");
+        }
+    }
+
+    /**
+     * Waits until every sink ran the calls queued so far (or gives up after a while).
+     */
+    private void drain() {
+        CountDownLatch caughtUp = new CountDownLatch(sinks.size());
+        for (Sink sink : sinks)
+            if (!sink.offerWithin(ui -> caughtUp.countDown())) caughtUp.countDown();
+        try {
+            caughtUp.await(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
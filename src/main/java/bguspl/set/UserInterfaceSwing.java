@@ -4,10 +4,14 @@ import bguspl.set.ex.Player;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.io.FileNotFoundException;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -18,10 +22,16 @@ import static java.lang.String.format;
  */
 public class UserInterfaceSwing extends JFrame implements UserInterface {
 
+    /**
+     * The time between frames of the warning countdown (about the display refresh rate).
+     */
+    private static final int REFRESH_MILLIS = 16;
+
     private final TimerPanel timerPanel;
     private final GamePanel gamePanel;
     private final PlayersPanel playersPanel;
     private final WinnerPanel winnerPanel;
+    private final DealingAnimation dealing;
     private final Config config;
 
     static String intInBaseToPaddedString(int n, int padding, int base) {
@@ -35,6 +45,7 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         gamePanel = new GamePanel();
         playersPanel = new PlayersPanel();
         winnerPanel = new WinnerPanel();
+        dealing = new DealingAnimation();
 
         setLayout(new GridBagLayout());
         GridBagConstraints gbc = new GridBagConstraints();
@@ -73,6 +84,19 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
         private final JLabel timerField;
 
+        /**
+         * Counts the time on the event dispatch thread between the resets sent by the dealer: the elapsed time up
+         * every second, the countdown down every second and at the display refresh rate once it warns.
+         */
+        private final Timer ticker;
+
+        /**
+         * System.currentTimeMillis() at which the elapsed time was 0, or at which the countdown ends.
+         */
+        private volatile long elapsedBase;
+        private volatile long deadline;
+        private volatile boolean counting;
+
         private String generateTime(long millies, boolean warn) {
             if (warn)
                 return format("Remaining Time: %.2f", (double) millies / 1000.0f);
@@ -88,15 +112,103 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             timerField.setForeground(Color.BLACK);
 
             add(timerField);
+
+            ticker = new Timer(1000, e -> tick());
+            ticker.setRepeats(false);
         }
 
         private void setCountdown(long millies, boolean warn) {
-            timerField.setText(generateTime(millies, warn));
-            timerField.setForeground(warn ? Color.RED : Color.BLACK);
+            deadline = System.currentTimeMillis() + millies;
+            counting = true;
+            EventQueue.invokeLater(this::tick);
         }
 
         private void setElapsed(long millies) {
-            timerField.setText("Elapsed time: " + millies / 1000);
+            elapsedBase = System.currentTimeMillis() - millies;
+            counting = false;
+            EventQueue.invokeLater(this::tick);
+        }
+
+        /**
+         * Shows the time and schedules the next tick: when the shown countdown changes next (the next whole second,
+         * or the next frame while warning), or in a second for the elapsed time.
+         */
+        private void tick() {
+            if (!isDisplayable()) return; // the window was disposed of
+            long now = System.currentTimeMillis();
+            long delay = 1000;
+            if (counting) {
+                long millies = Math.max(0, deadline - now);
+                boolean warn = millies <= config.turnTimeoutWarningMillis;
+                timerField.setText(generateTime(millies, warn));
+                timerField.setForeground(warn ? Color.RED : Color.BLACK);
+                if (millies == 0) {
+                    ticker.stop();
+                    return;
+                }
+                delay = warn ? REFRESH_MILLIS : Math.min(millies % 1000 + 1, millies - config.turnTimeoutWarningMillis);
+            } else timerField.setText("Elapsed time: " + (now - elapsedBase) / 1000);
+            ticker.setInitialDelay((int) Math.max(1, delay));
+            ticker.restart();
+        }
+    }
+
+    private static class DealingStep {
+
+        private final Runnable action;
+        private final boolean card;
+
+        private DealingStep(Runnable action, boolean card) {
+            this.action = action;
+            this.card = card;
+        }
+    }
+
+    /**
+     * Plays the table changes back on the event dispatch thread, one card every config.tableDelayMillis, so the
+     * dealing effect never blocks the game threads. Token changes are queued with the cards to keep their order.
+     */
+    private class DealingAnimation implements ActionListener {
+
+        private final Queue<DealingStep> steps = new ConcurrentLinkedQueue<>();
+        private final Timer timer;
+
+        private DealingAnimation() {
+            timer = new Timer((int) Math.max(1, config.tableDelayMillis), this);
+            timer.setInitialDelay(0);
+        }
+
+        private void enqueue(Runnable action, boolean card) {
+            if (config.tableDelayMillis <= 0) {
+                action.run();
+                return;
+            }
+            steps.add(new DealingStep(action, card));
+            timer.start(); // no-op when already running
+        }
+
+        private void card(Runnable action) {
+            enqueue(action, true);
+        }
+
+        private void token(Runnable action) {
+            enqueue(action, false);
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            // apply the pending token changes and at most one card change per tick
+            boolean dealt = false;
+            DealingStep step;
+            while ((step = steps.peek()) != null && !(dealt && step.card)) {
+                steps.remove();
+                dealt |= step.card;
+                step.action.run();
+            }
+            if (steps.isEmpty()) {
+                timer.stop();
+                if (!steps.isEmpty()) timer.start(); // a step raced with stopping
+            }
         }
     }
 
@@ -276,32 +388,32 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
     @Override
     public void placeCard(int card, int slot) {
-        gamePanel.placeCard(slot, card);
+        dealing.card(() -> gamePanel.placeCard(slot, card));
     }
 
     @Override
     public void removeCard(int slot) {
-        gamePanel.removeCard(slot);
+        dealing.card(() -> gamePanel.removeCard(slot));
     }
 
     @Override
     public void placeToken(int player, int slot) {
-        gamePanel.placeToken(player, slot);
+        dealing.token(() -> gamePanel.placeToken(player, slot));
     }
 
     @Override
     public void removeTokens() {
-        gamePanel.removeTokens();
+        dealing.token(() -> gamePanel.removeTokens());
     }
 
     @Override
     public void removeTokens(int slot) {
-        gamePanel.removeTokens(slot);
+        dealing.token(() -> gamePanel.removeTokens(slot));
     }
 
     @Override
     public void removeToken(int player, int slot) {
-        gamePanel.removeToken(player, slot);
+        dealing.token(() -> gamePanel.removeToken(player, slot));
     }
 
     @Override
@@ -1,8 +1,8 @@
 package bguspl.set;
 
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.SplittableRandom;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.IntStream;
 
@@ -13,8 +13,24 @@ public class UtilImpl implements Util {
 
     private final Config config;
 
+    /**
+     * Per thread spin sequences derived from config.randomSpinSeed and the thread name (null when unseeded).
+     */
+    private final ThreadLocal<SplittableRandom> spinRandom;
+
+    private final SetFinder setFinder;
+
+    /**
+     * The sets found so far, shared with the other games (null when disabled).
+     */
+    private final SetCache setCache;
+
     public UtilImpl(Config config) {
         this.config = config;
+        this.setFinder = new SetFinder(config);
+        this.setCache = SetCache.shared(config);
+        this.spinRandom = config.randomSpinSeed == 0 ? null : ThreadLocal.withInitial(
+                () -> new SplittableRandom(config.randomSpinSeed * 31 + Thread.currentThread().getName().hashCode()));
     }
 
     private void cardToFeatures(int card, int[] features) {
@@ -66,33 +82,14 @@ public class UtilImpl implements Util {
 
     @Override
     public List<int[]> findSets(List<Integer> deck, int count) {
-        LinkedList<int[]> sets = new LinkedList<>();
-        int n = deck.size();
-        int r = config.featureSize;
-        int[] combination = new int[r];
-
-        for (int i = 0; i < r; ++i)
-            combination[i] = i;
-
-        while (combination[r - 1] < deck.size()) {
-            int[] cards = Arrays.stream(combination).map(deck::get).sorted().toArray();
-            if (testSet(cards)) {
-                sets.add(cards);
-                if (sets.size() >= count) return sets;
-            }
-
-            // generate next combination in lexicographic order
-            int t = r - 1;
-            while (t != 0 && combination[t] == n - r + t) --t;
-            combination[t]++;
-            for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
-        }
-        return sets;
+        return setCache != null ? setCache.find(deck, count) : setFinder.find(deck, count);
     }
 
     public void spin() {
         if (config.randomSpinMax <= 0) return;
-        long cycles = ThreadLocalRandom.current().nextLong(config.randomSpinMin, config.randomSpinMax);
+        long cycles = spinRandom == null
+                ? ThreadLocalRandom.current().nextLong(config.randomSpinMin, config.randomSpinMax + 1)
+                : spinRandom.get().nextLong(config.randomSpinMin, config.randomSpinMax + 1);
         for (int i = 0; i < cycles; ++i)
             Thread.yield();
     }
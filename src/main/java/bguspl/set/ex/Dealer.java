@@ -1,15 +1,21 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
-
+import bguspl.set.GameEvents;
+import bguspl.set.LatencyHistogram;
+import bguspl.set.Metrics;
+import bguspl.set.SetFinder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Queue;
+import java.util.SplittableRandom;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.Level;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.Collections;
 import java.util.LinkedList;
 import java.util.concurrent.*;
 
@@ -31,9 +37,23 @@ public class Dealer implements Runnable {
     private List<Thread> playerThreads;
 
     /**
-     * The list of card ids that are left in the dealer's deck.
+     * The card ids that are left in the dealer's deck.
+     */
+    protected final DrawPile deck;
+
+    /*
+     * picks the cards drawn and where the completing card goes (dealer thread only)
+     */
+    private final SplittableRandom random;
+
+    /*
+     * The cards still in the game (in the deck or on the table) and the number of legal sets among them, updated
+     * as cards are won so the end of the game is known without searching (written by the dealer thread only,
+     * remainingSets is volatile for the metrics gauge)
      */
-    protected final List<Integer> deck;
+    private final SetFinder setFinder;
+    private final boolean[] remainingCards;
+    private volatile long remainingSets;
 
     /**
      * True iff game should be terminated.
@@ -43,21 +63,81 @@ public class Dealer implements Runnable {
     /**
      * The time when the dealer needs to reshuffle the deck due to turn timeout.
      */
-    private long reshuffleTime = Long.MAX_VALUE;
+    private volatile long reshuffleTime = Long.MAX_VALUE;
+
+    /*
+     * set by the watchdog to end the current turn, consumed by the dealer thread (the only writer of reshuffleTime)
+     */
+    private volatile boolean turnResetRequested;
+
+    /*
+     * true iff the watchdog ended the current turn (dealer thread only, for the Turn event)
+     */
+    private boolean turnWasReset;
+
+    /*
+     * true iff the last deal of an untimed game left no legal set on the table, so the turn has to end (the table is
+     * reshuffled, or the game ends when no set is left)
+     */
+    private boolean tableStuck;
+
+    /*
+     * the start of the turn the timer display was last reset for (the display counts by itself in between)
+     */
+    private long displayedSince = -1;
+
+    /*
+     * watches the game threads for lost handshakes (null when disabled)
+     */
+    private Watchdog watchdog;
+
+    /*
+     * checkpoints of the game (see GameCheckpoint), requested by another thread or due every checkpointMillis, and
+     * written by the dealer thread between verdicts so the snapshot is consistent
+     */
+    private volatile boolean checkpointRequested;
+    private long nextCheckpoint = Long.MAX_VALUE;
+
+    /*
+     * the turn time left in a resumed game (-1 when the game was not resumed)
+     */
+    private long resumeTurnMillis = -1;
 
     /*
      * the Queue of players that need their set to get checked
      */
     protected LinkedBlockingIntegerQueueSemaphore setSem;
 
-    protected long prevT;
+    /*
+     * Metrics: the time from a player's claim to the dealer's verdict, and the verdicts themselves
+     */
+    private final LatencyHistogram claimLatency;
+    private final Metrics.Counter goodClaims;
+    private final Metrics.Counter badClaims;
+    private final Metrics.Counter staleClaims;
+    private final Metrics.Counter reshuffles;
+    private final Metrics.Counter releasedClaims;
 
     public Dealer(Env env, Table table, Player[] players) {
         this.env = env;
         this.table = table;
         this.players = players;
-        deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
+        random = env.config.deckSeed != 0 ? new SplittableRandom(env.config.deckSeed) : new SplittableRandom();
+        deck = new DrawPile(env.config.deckSize, random);
+        setFinder = new SetFinder(env.config);
+        remainingCards = new boolean[env.config.deckSize];
+        Arrays.fill(remainingCards, true);
+        remainingSets = setFinder.countDeckSets();
         setSem = new LinkedBlockingIntegerQueueSemaphore(new ConcurrentLinkedQueue<Integer>());
+        claimLatency = env.metrics.histogram("dealer.claimLatency");
+        goodClaims = env.metrics.counter("dealer.claims.good");
+        badClaims = env.metrics.counter("dealer.claims.bad");
+        staleClaims = env.metrics.counter("dealer.claims.stale");
+        reshuffles = env.metrics.counter("dealer.reshuffles");
+        releasedClaims = env.metrics.counter("dealer.claims.released");
+        env.metrics.gauge("dealer.claimQueue", () -> setSem.Sets.size());
+        env.metrics.gauge("dealer.deck", () -> deck.size());
+        env.metrics.gauge("dealer.remainingSets", () -> remainingSets);
     }
 
     /**
@@ -68,10 +148,26 @@ public class Dealer implements Runnable {
         env.logger.info("Thread " + Thread.currentThread().getName() + " starting.");
         placeCardsOnTable();
         startGame();
+        if (env.config.watchdogMillis > 0)
+        {
+            watchdog = new Watchdog(env, this, table, players, Thread.currentThread());
+            watchdog.start();
+        }
+        if (!env.config.checkpointFile.isEmpty() && env.config.checkpointMillis > 0)
+            nextCheckpoint = System.currentTimeMillis() + env.config.checkpointMillis;
         while (!terminate)
         {
-            reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis;
+            if (env.applyStagedConfig())
+            {
+                env.logger.info("applied the reloaded configuration.");
+                checkTableStuck(); // the turns may have become untimed over a table without a set
+            }
+            long turnMillis = resumeTurnMillis >= 0 ? resumeTurnMillis : env.config.turnTimeoutMillis;
+            resumeTurnMillis = -1;
+            reshuffleTime = tableStuck ? 0 : untimed() ? Long.MAX_VALUE : System.currentTimeMillis() + turnMillis;
             timerLoop();
+            if (terminate && remainingSets > 0 && !env.config.checkpointFile.isEmpty())
+                writeCheckpoint(); // stopped in the middle of the game, it can be resumed from here
             endTimerProtocol();
             removeAllCardsFromTable();
             if(terminate)
@@ -81,6 +177,16 @@ public class Dealer implements Runnable {
         }
         terminate();
         terminateThreads();
+        if (watchdog != null)
+            watchdog.stop();
+        if (remainingSets == 0 && !env.config.checkpointFile.isEmpty())
+            try
+            {
+                Files.deleteIfExists(Paths.get(env.config.checkpointFile)); // the game is over, nothing to resume
+            }catch(IOException e)
+            {
+                env.logger.warning("cannot delete the checkpoint " + env.config.checkpointFile + ": " + e);
+            }
         announceWinners();
         env.logger.info("Thread " + Thread.currentThread().getName() + " terminated.");
     }
@@ -89,11 +195,14 @@ public class Dealer implements Runnable {
      * The inner loop of the dealer thread that runs as long as the countdown did not time out.
      */
     private void timerLoop() {
-        while (!terminate && System.currentTimeMillis() < reshuffleTime)
+        GameEvents.Turn turn = new GameEvents.Turn();
+        turn.begin();
+        turnWasReset = false;
+        while (!terminate && !consumeTurnReset() && System.currentTimeMillis() < reshuffleTime)
         {
-            long startTloop = System.currentTimeMillis();
-            prevT = System.currentTimeMillis() - 1000;
-            updateTimerDisplayLoop(true ,false, startTloop);
+            // a resumed turn started before the checkpoint
+            long startTloop = untimed() ? System.currentTimeMillis() : Math.min(System.currentTimeMillis(), reshuffleTime - env.config.turnTimeoutMillis);
+            updateTimerDisplay(startTloop);
             Boolean foundSet = false;
             while(!foundSet)
             {
@@ -108,17 +217,25 @@ public class Dealer implements Runnable {
             if (foundSet)
             {
                 foundGoodSetProtocol();
-                reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis;
+                turn.sets++;
+                if (!untimed())
+                    reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis;
+                else if (tableStuck)
+                    reshuffleTime = 0; // the deck could not complete a set
                 continue;
             }
         }
+        turn.timedOut = !terminate && !untimed() && reshuffleTime != 0 && System.currentTimeMillis() >= reshuffleTime;
+        turn.stuck = !terminate && tableStuck;
+        turn.reset = turnWasReset;
+        turn.commit();
     }
 
     private void startGame()
     {
         playerThreads = new LinkedList<Thread>();
         for (Player player: players)
-            playerThreads.add(new Thread(player));
+            playerThreads.add(new Thread(player, "player-" + player.id));
         for (Thread t: playerThreads)
                t.start();
     }
@@ -129,6 +246,11 @@ public class Dealer implements Runnable {
      */
     public void terminate()
     {
+        terminate = true;
+        synchronized(setSem)
+        {
+            setSem.notifyAll(); // the dealer sleeps until a claim or the end of the turn
+        }
         for(Player player: players)
         {
             synchronized(player.tableReady)
@@ -143,18 +265,134 @@ public class Dealer implements Runnable {
         }
     }
 
+    /**
+     * Asks the dealer thread to checkpoint the game as soon as it is between verdicts (see Config.checkpointFile).
+     */
+    public void requestCheckpoint()
+    {
+        checkpointRequested = true;
+        synchronized(setSem)
+        {
+            setSem.notifyAll();
+        }
+    }
+
+    /**
+     * Takes a snapshot of the game (dealer thread only, or before the game starts).
+     */
+    GameCheckpoint checkpoint()
+    {
+        long now = System.currentTimeMillis();
+        int[] deckCards = deck.toArray();
+        int[] slots = new int[env.config.tableSize];
+        for (int slot = 0; slot < slots.length; slot++)
+            slots[slot] = table.slotToCard[slot] == null ? -1 : table.slotToCard[slot];
+        int[] scores = new int[players.length];
+        long[] freezes = new long[players.length];
+        for (Player player: players)
+        {
+            scores[player.id] = player.score();
+            freezes[player.id] = player.freezeRemaining(now);
+        }
+        long turnMillis = untimed() ? -1 : Math.max(0, reshuffleTime - now);
+        return new GameCheckpoint(now, turnMillis, remainingSets, deckCards, slots, scores, freezes);
+    }
+
+    /**
+     * Resumes a checkpointed game: deals its deck and table, restores the scores, freezes and the time left in the
+     * turn. Must be called before the dealer thread starts.
+     */
+    public void restore(GameCheckpoint checkpoint)
+    {
+        deck.clear();
+        Arrays.fill(remainingCards, false);
+        for (int card: checkpoint.deck)
+        {
+            deck.add(card);
+            remainingCards[card] = true;
+        }
+        Table.Transaction deal = table.beginTransaction();
+        for (int slot = 0; slot < checkpoint.slots.length; slot++)
+            if (checkpoint.slots[slot] >= 0)
+            {
+                remainingCards[checkpoint.slots[slot]] = true;
+                deal.place(checkpoint.slots[slot], slot);
+            }
+        deal.commit();
+        remainingSets = checkpoint.remainingSets;
+        for (Player player: players)
+            player.restore(checkpoint.scores[player.id], checkpoint.freezes[player.id]);
+        resumeTurnMillis = checkpoint.turnMillis;
+    }
+
+    private boolean checkpointDue()
+    {
+        return checkpointRequested || System.currentTimeMillis() >= nextCheckpoint;
+    }
+
+    private void writeCheckpoint()
+    {
+        checkpointRequested = false;
+        if (env.config.checkpointMillis > 0)
+            nextCheckpoint = System.currentTimeMillis() + env.config.checkpointMillis;
+        if (env.config.checkpointFile.isEmpty())
+        {
+            env.logger.warning("a checkpoint was requested but no CheckpointFile is configured");
+            return;
+        }
+        try
+        {
+            checkpoint().write(Paths.get(env.config.checkpointFile), env.config);
+        }catch(IOException e)
+        {
+            env.logger.severe("cannot checkpoint the game to " + env.config.checkpointFile + ": " + e);
+        }
+    }
+
+    /**
+     * Ends the current turn as if the countdown ran out (used by the watchdog to recover from a stall).
+     */
+    public void resetTurn()
+    {
+        turnResetRequested = true;
+        synchronized(setSem)
+        {
+            setSem.notifyAll();
+        }
+    }
+
+    /**
+     * Ends the turn if the watchdog asked to (dealer thread only).
+     *
+     * @return true iff the turn was ended.
+     */
+    private boolean consumeTurnReset()
+    {
+        if (!turnResetRequested)
+            return false;
+        turnResetRequested = false;
+        turnWasReset = true;
+        reshuffleTime = 0;
+        return true;
+    }
+
+    /**
+     * Releases the player threads and waits for them to exit, last to first.
+     */
     public void terminateThreads()
     {
         for(int i = players.length-1; i >= 0; i--)
         {
             synchronized(players[i].isFree)
             {
-                players[i].isFree.set(false);
+                players[i].released = true;
+                players[i].isFree.notifyAll();
+            }
+            if(playerThreads != null)
                 try
                 {
-                    players[i].isFree.notifyAll();
-                }catch(IllegalMonitorStateException ignored){}
-            }
+                    playerThreads.get(i).join();
+                }catch(InterruptedException ignored){}
         }
     }
 
@@ -164,17 +402,19 @@ public class Dealer implements Runnable {
      * @return true iff the game should be finished.
      */
     private boolean shouldFinish() {
-        return terminate || env.util.findSets(deck, 1).size() == 0;
+        return terminate || remainingSets == 0;
     }
 
     /**
-     * Checks cards should be removed from the table and removes them.
+     * Checks cards should be removed from the table and stages their removal.
      */
-    private void removeCardFromTableAbdDeck(int slot) 
+    private void removeCardFromTableAbdDeck(int slot, Table.Transaction refresh) 
     {
         Integer CardtoRemove = table.slotToCard[slot];
         deck.remove(CardtoRemove);
-        table.removeCard(slot);
+        remainingSets -= setFinder.countSetsWith(CardtoRemove, remainingCards);
+        remainingCards[CardtoRemove] = false;
+        refresh.remove(slot);
     }
 
     /**
@@ -182,56 +422,134 @@ public class Dealer implements Runnable {
      */
     private void placeCardsOnTable() 
     {
-        Collections.shuffle(deck);
-        for (int i = 0; i < env.config.rows*env.config.columns; i++)
+        int empty = 0;
+        for (int slot = table.nextEmptySlot(0); slot != -1; slot = table.nextEmptySlot(slot + 1))
+            empty++;
+        int[] cards = drawCards(tableCards(new int[0]), empty);
+        int i = 0;
+        for (int slot = table.nextEmptySlot(0); slot != -1 & i < cards.length; slot = table.nextEmptySlot(slot + 1))
+            table.placeCard(cards[i++], slot);
+        checkTableStuck();
+    }
+
+    /**
+     * Sets tableStuck after a deal (the first deal, a reshuffle, a resumed table or the replacement of a set).
+     */
+    private void checkTableStuck()
+    {
+        tableStuck = untimed() && env.util.findSets(Arrays.asList(tableCards(new int[0])), 1).isEmpty();
+    }
+
+    /**
+     * True iff the turns have no timeout (turnTimeoutMillis <= 0): the table is then dealt to always hold a set.
+     */
+    private boolean untimed()
+    {
+        return env.config.turnTimeoutMillis <= 0;
+    }
+
+    /**
+     * The cards on the table, except on the given slots.
+     */
+    private Integer[] tableCards(int[] excludedSlots)
+    {
+        List<Integer> cards = new LinkedList<Integer>();
+        for (int slot = table.nextOccupiedSlot(0); slot != -1; slot = table.nextOccupiedSlot(slot + 1))
         {
-            if(table.slotToCard[i] == null & !deck.isEmpty())
-            {
-                table.placeCard(deck.get(0), i);
-                deck.remove(0);
-            }
+            boolean excluded = false;
+            for (int excludedSlot: excludedSlots)
+                excluded |= excludedSlot == slot;
+            if (!excluded)
+                cards.add(table.slotToCard[slot]);
+        }
+        return cards.toArray(new Integer[0]);
+    }
+
+    /**
+     * Draws random cards from the deck. In untimed games the last card drawn completes a set with the kept cards and
+     * the ones drawn before it, found with the set finder's completion table instead of dealing and searching again,
+     * and is then put at a random position so it does not give the set away.
+     *
+     * @param kept  - the cards staying on the table.
+     * @param count - the number of cards to draw.
+     * @return - the cards drawn (fewer when the deck runs out).
+     */
+    private int[] drawCards(Integer[] kept, int count)
+    {
+        int[] drawn = new int[Math.min(count, deck.size())];
+        if (drawn.length == 0)
+            return drawn;
+        int last = drawn.length - 1;
+        for (int i = 0; i < last; i++)
+            drawn[i] = deck.draw();
+        int completion = -1;
+        if (untimed())
+        {
+            int[] cards = new int[kept.length + last];
+            for (int i = 0; i < kept.length; i++)
+                cards[i] = kept[i];
+            System.arraycopy(drawn, 0, cards, kept.length, last);
+            if (cards.length > 0)
+                completion = setFinder.findCompletion(cards, deck::contains, random.nextInt(cards.length));
+        }
+        if (completion == -1)
+            drawn[last] = deck.draw();
+        else
+        {
+            deck.remove(completion);
+            int position = random.nextInt(drawn.length);
+            drawn[last] = drawn[position];
+            drawn[position] = completion;
         }
+        return drawn;
     }
 
     /**
-     * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
+     * Sleeps until a player claims a set, the turn times out, a checkpoint is due or the game is terminated (the
+     * display counts the time by itself, the dealer does not wake up for it).
      */
     private Boolean sleepUntilWokenOrSecond(long startTloop) {
         synchronized(setSem)
         {
-            while(this.setSem.Sets.isEmpty()/*  & startTloop + env.config.turnTimeoutMillis > System.currentTimeMillis()*/)
+            while(this.setSem.Sets.isEmpty() && !terminate)
             {
-                if(startTloop + env.config.turnTimeoutMillis < System.currentTimeMillis())
+                if (consumeTurnReset())
+                    return null;
+                long now = System.currentTimeMillis();
+                long deadline = untimed() ? reshuffleTime : Math.min(reshuffleTime, startTloop + env.config.turnTimeoutMillis + 1);
+                if(now >= deadline)
                     return null;
-                updateTimerDisplayLoop(System.currentTimeMillis() - prevT >= 1000 ,env.config.turnTimeoutMillis - (System.currentTimeMillis()-startTloop)<= env.config.turnTimeoutWarningMillis, startTloop);
+                if (checkpointDue())
+                {
+                    writeCheckpoint(); // no claim is pending, the game is between verdicts
+                    continue;
+                }
                 try{
-                    setSem.wait(Math.min(1000, System.currentTimeMillis() - prevT));
+                    setSem.wait(Math.min(deadline, nextCheckpoint) - now);
                 }catch(InterruptedException ignored){}
                  catch(IllegalMonitorStateException ignored){}       
             }
-            updateTimerDisplayLoop(System.currentTimeMillis() - prevT >= 1000 ,env.config.turnTimeoutMillis - (System.currentTimeMillis()-startTloop)<= env.config.turnTimeoutWarningMillis, startTloop);
-            if(startTloop + env.config.turnTimeoutMillis < System.currentTimeMillis())
+            if(terminate || (!untimed() && startTloop + env.config.turnTimeoutMillis < System.currentTimeMillis()))
                 return null;
             return checkIfSetGood(makeSetfromPLayer());
         }
     }
 
     /**
-     * Reset and/or update the countdown and the countdown display.
+     * Resets the timer display when a new turn starts: the countdown to the reshuffle in timed games, the elapsed
+     * time in untimed games with turnTimeoutMillis == 0. The display counts (and warns) by itself from there.
      */
-    private void updateTimerDisplayLoop(boolean reset ,boolean warning, long startTloop) {
-        if (reset)
+    private void updateTimerDisplay(long startTloop) {
+        if (displayedSince == startTloop || env.config.turnTimeoutMillis < 0)
+            return;
+        displayedSince = startTloop;
+        long passed = System.currentTimeMillis() - startTloop;
+        if (untimed())
+            env.ui.setElapsed(passed);
+        else
         {
-            if(warning)
-            {
-                env.ui.setCountdown((((env.config.turnTimeoutMillis - (System.currentTimeMillis() - startTloop))/1000)*1000), warning);
-                prevT = System.currentTimeMillis() - 1000;
-            }
-            else
-            {
-            env.ui.setCountdown(env.config.turnTimeoutMillis - (System.currentTimeMillis() - startTloop), warning);
-            prevT = System.currentTimeMillis() - 1000;
-            }
+            long remaining = Math.max(0, env.config.turnTimeoutMillis - passed);
+            env.ui.setCountdown(remaining, remaining <= env.config.turnTimeoutWarningMillis);
         }
     }
 
@@ -240,16 +558,29 @@ public class Dealer implements Runnable {
         if (setSem.Sets.peek() == null)
             return null;
         int player = setSem.Sets.peek();
-        int[] Set = new int[env.config.featureSize];
-        int j = 0;
-        for (int i: players[player].choices)
-        {
-            Set[j] = table.slotToCard[i];
-            j++;
-        }
+        if (isClaimStale(players[player]))
+            return null;
+        int[] slots = table.tokenSlots(player);
+        int[] Set = new int[slots.length];
+        for (int j = 0; j < slots.length; j++)
+            Set[j] = table.slotToCard[slots[j]];
         return Set;
     }
 
+    /**
+     * Checks whether the player's choices changed under the claim (a token was dropped or a card was replaced).
+     */
+    private boolean isClaimStale(Player player)
+    {
+        int[] slots = table.tokenSlots(player.id);
+        if (slots.length != env.config.featureSize)
+            return true;
+        for (int slot: slots)
+            if (!table.isCurrent(slot, player.choiceVersions[slot]))
+                return true;
+        return false;
+    }
+
     private boolean checkIfSetGood (int[] Set)
      { 
         if (Set == null)
@@ -267,20 +598,10 @@ public class Dealer implements Runnable {
 
         //Backend
         env.ui.removeTokens();
-        for (Player player: players)
-        {
-            synchronized(player.choices)
-            {
-                player.choices.clear();
-            }
-        }
-        for (int i = 0; i <env.config.rows*env.config.columns; i++)
+        for (int slot = table.nextOccupiedSlot(0); slot != -1; slot = table.nextOccupiedSlot(slot + 1))
         {
-            if(table.slotToCard[i] != null)
-            {
-                deck.add(table.slotToCard[i]);
-                table.removeCard(i);
-            }
+            deck.add(table.slotToCard[slot]);
+            table.removeCard(slot);
         }
         terminate = shouldFinish();
     }
@@ -314,13 +635,38 @@ public class Dealer implements Runnable {
     }
 
 
+    /**
+     * Records the time from a player's claim to the dealer's verdict.
+     */
+    private void recordVerdict(Player player)
+    {
+        long latency = System.nanoTime() - player.claimNanos;
+        claimLatency.record(latency);
+        player.verdict(latency);
+    }
+
     private void foundBadSetProtocol()
     {
         Player player = players[setSem.Sets.remove()];
         synchronized(player.wasChecked)
         {
-            player.wasChecked.set(true);
-            player.penalty();
+            recordVerdict(player);
+            if(isClaimStale(player))
+            {
+                staleClaims.increment();
+                GameEvents.ClaimVerdict.emit(player.id, "stale", player.claimNanos);
+                // the cards changed under the player, drop the outdated choices instead of penalizing
+                for (int slot: table.tokenSlots(player.id))
+                    if (!table.isCurrent(slot, player.choiceVersions[slot]))
+                        table.removeToken(player.id, slot);
+            }
+            else
+            {
+                badClaims.increment();
+                GameEvents.ClaimVerdict.emit(player.id, "bad", player.claimNanos);
+                player.wasChecked.set(true);
+                player.penalty();
+            }
             try
             {
             player.wasChecked.notifyAll();
@@ -328,32 +674,46 @@ public class Dealer implements Runnable {
         }
     }
 
+    /**
+     * Replaces the winning cards in one table epoch. Only players holding tokens on the replaced slots lose those
+     * choices, everyone else keeps playing.
+     */
     private void foundGoodSetProtocol()
     {
         Player winner = players[setSem.Sets.remove()];
-        for(Player p: players)
-            p.tableReady.set(false);
-        for(int i: winner.choices)
-            removeCardFromTableAbdDeck(i);
-        for(Player p: players)
-            for(int i: winner.choices)
-                if(p.id != winner.id)
-                    p.choices.remove(i);
+        recordVerdict(winner);
+        goodClaims.increment();
+        GameEvents.ClaimVerdict.emit(winner.id, "good", winner.claimNanos);
+        int[] winningSlots = table.tokenSlots(winner.id);
+        Table.Transaction refresh = table.beginTransaction();
+        int[] cards = drawCards(tableCards(winningSlots), winningSlots.length);
+        for(int i = 0; i < winningSlots.length; i++)
+        {
+            removeCardFromTableAbdDeck(winningSlots[i], refresh);
+            if(i < cards.length)
+                refresh.place(cards[i], winningSlots[i]);
+        }
+        long[] winningMask = table.slotMask(winningSlots);
+        List<Integer> invalidated = new LinkedList<Integer>();
         for(int player: setSem.Sets)
+            if(table.hasTokenOn(player, winningMask))
+                invalidated.add(player);
+        refresh.commit(); // takes the tokens on the replaced slots off the table
+        checkTableStuck();
+        for(int player: invalidated)
         {
-            if(players[player].choices.size()<env.config.featureSize)
+            recordVerdict(players[player]);
+            staleClaims.increment();
+            GameEvents.ClaimVerdict.emit(player, "stale", players[player].claimNanos);
+            setSem.Sets.remove(player);
+            synchronized(players[player].wasChecked)
             {
-                setSem.Sets.remove(player);
-                synchronized(players[player].wasChecked)
+                try
                 {
-                    try
-                    {
-                        players[player].wasChecked.notifyAll();
-                    }catch(IllegalMonitorStateException ignored){}
-                }
+                    players[player].wasChecked.notifyAll();
+                }catch(IllegalMonitorStateException ignored){}
             }
         }
-        placeCardsOnTable();
         winner.point();
         synchronized(winner.wasChecked)
         {
@@ -363,22 +723,11 @@ public class Dealer implements Runnable {
                 winner.wasChecked.notifyAll();
             }catch(IllegalMonitorStateException ignored){}
         }
-        for(Player p: players)
-        {
-            if(!p.wasShuffled.get())
-                synchronized(p.tableReady)
-                {
-                    p.tableReady.set(true);
-                    try
-                    {
-                    p.tableReady.notifyAll();
-                    }catch(IllegalMonitorStateException ignored){}
-                }
-        }
     }
 
     private void endTimerProtocol()
     {
+        reshuffles.increment();
         for(Player p: players)
         {
             p.wasChecked.set(false);
@@ -386,25 +735,20 @@ public class Dealer implements Runnable {
             p.tableReady.set(false);
             p.wasShuffled.set(true);
             p.wasPenalized.set(false);
-            p.choices.clear();
+            table.removeTokens(p.id);
         }
-        for(Player player:players)
+        while (!setSem.Sets.isEmpty())
         {
-            if(!setSem.Sets.contains(player.id))
-                synchronized(player.choices)
-                {
-                    player.choices.notifyAll();
-                }
+            setSem.Sets.remove();
+            releasedClaims.increment();
         }
-        while (!setSem.Sets.isEmpty())
+        /* wake every player wherever it waits, so a lost handshake does not outlive the turn */
+        for(Player player:players)
         {
-            int player = setSem.Sets.remove();
-            synchronized(players[player].wasChecked)
+            player.wakeUp();
+            synchronized(player.wasChecked)
             {
-                try
-                {
-                    players[player].wasChecked.notifyAll();
-                }catch(IllegalMonitorStateException ignored){}
+                player.wasChecked.notifyAll();
             }
         }
     }
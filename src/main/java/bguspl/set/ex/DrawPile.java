@@ -0,0 +1,98 @@
+package bguspl.set.ex;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * The cards left in the dealer's deck, as a pool of card ids in no particular order. Drawing picks a uniformly random
+ * card from the pool and fills its place with the last card of the pool, so drawing, adding and removing a given card
+ * take constant time and the deck is never shuffled as a whole.
+ *
+ * @inv positions[pool[i]] == i for every i < size, positions[card] == -1 for every other card
+ */
+public class DrawPile {
+
+    private final int[] pool;
+    private final int[] positions;
+    private int size;
+    private final SplittableRandom random;
+
+    /**
+     * @param deckSize - the number of cards in the game (the pile starts with all of them).
+     * @param random   - picks the cards drawn.
+     */
+    public DrawPile(int deckSize, SplittableRandom random) {
+        pool = new int[deckSize];
+        positions = new int[deckSize];
+        for (int card = 0; card < deckSize; card++) {
+            pool[card] = card;
+            positions[card] = card;
+        }
+        size = deckSize;
+        this.random = random;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int card) {
+        return positions[card] >= 0;
+    }
+
+    /**
+     * Takes a uniformly random card out of the pile.
+     *
+     * @return - the card drawn.
+     * @pre - !isEmpty()
+     */
+    public int draw() {
+        if (size == 0) throw new IllegalStateException("the pile is empty");
+        int card = pool[random.nextInt(size)];
+        remove(card);
+        return card;
+    }
+
+    /**
+     * Takes a given card out of the pile.
+     *
+     * @return - true iff the card was in the pile.
+     */
+    public boolean remove(int card) {
+        int position = positions[card];
+        if (position < 0) return false;
+        int last = pool[--size];
+        pool[position] = last;
+        positions[last] = position;
+        positions[card] = -1;
+        return true;
+    }
+
+    /**
+     * Puts a card (back) in the pile.
+     *
+     * @return - true iff the card was not in the pile already.
+     */
+    public boolean add(int card) {
+        if (positions[card] >= 0) return false;
+        pool[size] = card;
+        positions[card] = size++;
+        return true;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) positions[pool[i]] = -1;
+        size = 0;
+    }
+
+    /**
+     * @return - the cards in the pile, in the pile's (arbitrary) order.
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(pool, size);
+    }
+}
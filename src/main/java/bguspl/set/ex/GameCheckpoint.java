@@ -0,0 +1,174 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * A snapshot of a running game, enough to resume it in another JVM: the deck (in order), the card in every slot, the
+ * number of legal sets left, the remaining turn time and every player's score and remaining freeze. The players'
+ * tokens are not kept, they choose again after resuming.
+ * <p>
+ * File layout (big endian): magic, version, then the deck size, table size and number of players the game was
+ * configured with (a snapshot is only resumed with the same configuration), the time it was taken, the remaining
+ * turn time (-1 in untimed games), the remaining sets, the deck (an int count followed by a short per card), a short
+ * card per slot (-1 for none), an int score and a long freeze per player, and a CRC32 of everything before it.
+ * The file is written next to its final name and moved into place, so a crash never leaves a torn snapshot.
+ */
+public class GameCheckpoint {
+
+    private static final long MAGIC = 0x534554534e415053L; // "SETSNAPS"
+    private static final int VERSION = 1;
+
+    /**
+     * System.currentTimeMillis() when the snapshot was taken.
+     */
+    public final long savedAtMillis;
+
+    /**
+     * The milliseconds left until the reshuffle (-1 when the turns have no timeout).
+     */
+    public final long turnMillis;
+
+    /**
+     * The number of legal sets left among the cards in the deck and on the table.
+     */
+    public final long remainingSets;
+
+    public final int[] deck;
+
+    /**
+     * The card in each slot (-1 for an empty slot).
+     */
+    public final int[] slots;
+
+    public final int[] scores;
+
+    /**
+     * The milliseconds each player is still frozen for.
+     */
+    public final long[] freezes;
+
+    public GameCheckpoint(long savedAtMillis, long turnMillis, long remainingSets, int[] deck, int[] slots,
+                          int[] scores, long[] freezes) {
+        this.savedAtMillis = savedAtMillis;
+        this.turnMillis = turnMillis;
+        this.remainingSets = remainingSets;
+        this.deck = deck;
+        this.slots = slots;
+        this.scores = scores;
+        this.freezes = freezes;
+    }
+
+    private int size() {
+        return 8 + 4 + 12 + 24 + 4 + 2 * deck.length + 2 * slots.length + 12 * scores.length + 8;
+    }
+
+    /**
+     * Writes the snapshot (replacing the file atomically).
+     *
+     * @param file   - the snapshot file.
+     * @param config - the configuration of the game.
+     */
+    public void write(Path file, Config config) throws IOException {
+        if (config.deckSize > Short.MAX_VALUE)
+            throw new IOException("cannot checkpoint a deck of " + config.deckSize + " cards");
+        ByteBuffer buffer = ByteBuffer.allocate(size());
+        buffer.putLong(MAGIC).putInt(VERSION);
+        buffer.putInt(config.deckSize).putInt(slots.length).putInt(scores.length);
+        buffer.putLong(savedAtMillis).putLong(turnMillis).putLong(remainingSets);
+        buffer.putInt(deck.length);
+        for (int card : deck) buffer.putShort((short) card);
+        for (int card : slots) buffer.putShort((short) card);
+        for (int player = 0; player < scores.length; player++) buffer.putInt(scores[player]).putLong(freezes[player]);
+        buffer.putLong(checksum(buffer.array(), buffer.position()));
+        buffer.flip();
+
+        Path absolute = file.toAbsolutePath();
+        if (absolute.getParent() != null) Files.createDirectories(absolute.getParent());
+        Path temporary = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(false);
+        }
+        Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot.
+     *
+     * @param file   - the snapshot file.
+     * @param config - the configuration of the game to resume.
+     * @return - the snapshot.
+     * @throws IOException - if the file is not a valid snapshot of a game with this configuration (including cards
+     *                     that are not in the deck or are dealt twice).
+     */
+    public static GameCheckpoint read(Path file, Config config) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException(file + " is not a game snapshot");
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining())
+                if (channel.read(buffer) < 0) break;
+        }
+        buffer.flip();
+        if (buffer.remaining() < 12 || buffer.getLong() != MAGIC || buffer.getInt() != VERSION)
+            throw new IOException(file + " is not a game snapshot of version " + VERSION);
+        if (buffer.limit() < 8 || checksum(buffer.array(), buffer.limit() - 8) != buffer.getLong(buffer.limit() - 8))
+            throw new IOException(file + " is corrupt");
+        try {
+            int deckSize = buffer.getInt();
+            int tableSize = buffer.getInt();
+            int players = buffer.getInt();
+            if (deckSize != config.deckSize || tableSize != config.tableSize || players != config.players)
+                throw new IOException(file + " is a game of " + deckSize + " cards, " + tableSize + " slots and "
+                        + players + " players, which the configuration does not match");
+            long savedAtMillis = buffer.getLong();
+            long turnMillis = buffer.getLong();
+            long remainingSets = buffer.getLong();
+            if (remainingSets < 0) throw new IOException(file + " is corrupt: " + remainingSets + " sets left");
+            int deckCards = buffer.getInt();
+            if (deckCards < 0 || deckCards > deckSize)
+                throw new IOException(file + " is corrupt: a deck of " + deckCards + " cards");
+            boolean[] dealt = new boolean[deckSize];
+            int[] deck = new int[deckCards];
+            for (int i = 0; i < deck.length; i++) deck[i] = checkCard(buffer.getShort(), false, dealt, file);
+            int[] slots = new int[tableSize];
+            for (int slot = 0; slot < tableSize; slot++) slots[slot] = checkCard(buffer.getShort(), true, dealt, file);
+            int[] scores = new int[players];
+            long[] freezes = new long[players];
+            for (int player = 0; player < players; player++) {
+                scores[player] = buffer.getInt();
+                freezes[player] = buffer.getLong();
+            }
+            return new GameCheckpoint(savedAtMillis, turnMillis, remainingSets, deck, slots, scores, freezes);
+        } catch (RuntimeException e) { // a valid checksum over a truncated layout
+            throw new IOException(file + " is corrupt: " + e);
+        }
+    }
+
+    /**
+     * Checks a card read from a snapshot: a card of the deck not read before, or -1 for an empty slot.
+     */
+    private static int checkCard(int card, boolean slot, boolean[] dealt, Path file) throws IOException {
+        if (slot && card == -1) return card;
+        if (card < 0 || card >= dealt.length) throw new IOException(file + " is corrupt: there is no card " + card);
+        if (dealt[card]) throw new IOException(file + " is corrupt: card " + card + " is dealt twice");
+        dealt[card] = true;
+        return card;
+    }
+
+    private static long checksum(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return crc.getValue();
+    }
+}
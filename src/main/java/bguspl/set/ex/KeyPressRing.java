@@ -0,0 +1,136 @@
+package bguspl.set.ex;
+
+import bguspl.set.Metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded single producer, single consumer ring buffer of key presses for one player: the keyboard (the event
+ * dispatch thread) or the player's AI thread pushes (slot, System.nanoTime()) records and the player thread drains
+ * them. Neither side takes a lock.
+ * <p>
+ * When the ring is full a producer either drops the press (the keyboard, which must never wait) or parks until the
+ * player thread drains it (the AI, so a bot cannot flood its player and the dealer). A blocked producer is released
+ * while the ring is closed, i.e. while the player thread is not draining it. Two presses of the same slot in a row
+ * toggle a token on and off again, so the consumer skips such pairs (among the presses it does not discard).
+ */
+public class KeyPressRing {
+
+    /**
+     * Receives the drained key presses.
+     */
+    public interface Consumer {
+        void accept(int slot, long nanos);
+    }
+
+    private final int[] slots;
+    private final long[] times;
+
+    /**
+     * The number of presses read so far (written by the consumer only).
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The number of presses written so far (written by the producer only).
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The producer parked on a full ring, if any.
+     */
+    private volatile Thread blocked;
+
+    /**
+     * True iff the consumer is draining the ring (a full ring blocks the producer only then).
+     */
+    private volatile boolean open;
+
+    private final Metrics.Counter dropped;
+    private final Metrics.Counter coalesced;
+
+    /**
+     * @param capacity  - the maximal number of presses waiting.
+     * @param dropped   - counts the presses dropped on a full ring.
+     * @param coalesced - counts the presses skipped in toggle pairs.
+     */
+    public KeyPressRing(int capacity, Metrics.Counter dropped, Metrics.Counter coalesced) {
+        slots = new int[Math.max(1, capacity)];
+        times = new long[slots.length];
+        this.dropped = dropped;
+        this.coalesced = coalesced;
+    }
+
+    /**
+     * Pushes a key press (producer thread only).
+     *
+     * @param slot  - the slot of the key pressed.
+     * @param nanos - System.nanoTime() of the press.
+     * @param block - true to wait for room while the ring is full and open, false to drop the press.
+     * @return - false iff the press was dropped.
+     */
+    public boolean offer(int slot, long nanos, boolean block) {
+        long t = tail.get();
+        while (t - head.get() == slots.length) {
+            if (!block || !open) {
+                dropped.increment();
+                return false;
+            }
+            blocked = Thread.currentThread();
+            if (t - head.get() == slots.length && open) // the consumer reads blocked after moving head
+                LockSupport.park(this);
+            blocked = null;
+        }
+        int index = (int) (t % slots.length);
+        slots[index] = slot;
+        times[index] = nanos;
+        tail.lazySet(t + 1); // publishes the record
+        return true;
+    }
+
+    /**
+     * Passes every waiting key press made since sinceNanos to the consumer, oldest first, except pairs of such
+     * presses of the same slot in a row (consumer thread only). The older presses are discarded first, so a press
+     * that counts is never coalesced with one that does not.
+     *
+     * @param sinceNanos - System.nanoTime() before which the presses are discarded.
+     * @return - the number of presses drained.
+     */
+    public int drain(long sinceNanos, Consumer consumer) {
+        long h = head.get();
+        long t = tail.get();
+        for (long i = h; i < t; i++) {
+            int index = (int) (i % slots.length);
+            if (times[index] - sinceNanos < 0) continue;
+            int next = (int) ((i + 1) % slots.length);
+            if (i + 1 < t && slots[next] == slots[index] && times[next] - sinceNanos >= 0) {
+                coalesced.add(2);
+                i++;
+            } else consumer.accept(slots[index], times[index]);
+        }
+        head.set(t); // frees the records for the producer
+        release();
+        return (int) (t - h);
+    }
+
+    /**
+     * Opens or closes the ring: only an open ring blocks its producer when full.
+     */
+    public void setOpen(boolean open) {
+        this.open = open;
+        if (!open) release();
+    }
+
+    private void release() {
+        Thread producer = blocked;
+        if (producer != null) LockSupport.unpark(producer);
+    }
+
+    /**
+     * @return - the number of key presses waiting.
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+}
@@ -1,13 +1,17 @@
 package bguspl.set.ex;
 
 import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 import bguspl.set.Env;
+import bguspl.set.GameEvents;
+import bguspl.set.LatencyHistogram;
+import bguspl.set.Metrics;
 
 /**
  * This class manages the players' threads and data
@@ -35,18 +39,23 @@ public class Player implements Runnable {
     /**
      * The thread representing the current player.
      */
-    private Thread playerThread;
+    protected volatile Thread playerThread;
 
     /**
      * The thread of the AI (computer) player (an additional thread used to generate key presses).
      */
-    private Thread aiThread;
+    protected volatile Thread aiThread;
 
     /**
      * True iff the player is human (not a computer player).
      */
     private final boolean human;
 
+    /**
+     * The strategy of a computer player (see Config.botStrategies).
+     */
+    private final String strategy;
+
     /**
      * True iff game should be terminated.
      */
@@ -64,10 +73,13 @@ public class Player implements Runnable {
     private Dealer dealer;
 
     /*
-     * The Queue of slots the player chose on the board 
+     * The slots the player chose on the board are the player's tokens on the table (see Table.placeToken)
      */
 
-    protected volatile BlockingQueue<Integer> choices;
+    /*
+     * The table version of each slot at the time the player chose it (checked by the dealer when the set is claimed)
+     */
+    protected final long[] choiceVersions;
     
     /*
      * Boolean indicationg if the set that I sent was Checked
@@ -84,6 +96,27 @@ public class Player implements Runnable {
      */
     protected volatile AtomicBoolean isFree;
 
+    /*
+     * System.nanoTime() when the player last became free, key presses made before are ignored
+     */
+    private volatile long freeSinceNanos;
+
+    /*
+     * System.currentTimeMillis() when the current freeze ends (0 when the player is not frozen), kept for checkpoints
+     */
+    private volatile long frozenUntil;
+
+    /*
+     * The freeze left when the game was checkpointed, served before the first turn of a resumed game
+     */
+    private long resumeFreezeMillis;
+
+    /*
+     * The key presses waiting for the player thread, from the keyboard (the event dispatch thread never touches the
+     * game state) or from the AI thread (bounded by featureSize so a bot cannot flood the dealer with claims)
+     */
+    private final KeyPressRing keyPresses;
+
     /*
      * Boolean indicationg if i need to go to lock down Protocol because the table isnt ready for players
      */
@@ -100,6 +133,34 @@ public class Player implements Runnable {
     protected LinkedList<Integer> AIpool = null;
 
     protected volatile AtomicBoolean aiRun;
+
+    /*
+     * Set by the dealer when the player thread may exit (players are released last to first)
+     */
+    protected volatile boolean released;
+
+    /*
+     * System.nanoTime() when the player last sent a set to the dealer
+     */
+    protected volatile long claimNanos;
+
+    /*
+     * Totals for the statistics store, read once the player thread is done: claims and reaction times are added by
+     * the player thread, penalties, verdicts and their latencies by the dealer
+     */
+    private int claimCount;
+    private long reactionNanos;
+    private volatile int penaltyCount;
+    private volatile int verdictCount;
+    private volatile long claimLatencyNanos;
+
+    /*
+     * Metrics: how long the player stays frozen after each verdict
+     */
+    private final LatencyHistogram freezeTime;
+    private final Metrics.Counter frozenMillis;
+    private final Metrics.Counter penalties;
+    private final Metrics.Counter claims;
     
 
     /**
@@ -116,13 +177,21 @@ public class Player implements Runnable {
         this.table = table;
         this.id = id;
         this.human = human;
+        this.strategy = env.config.botStrategies[id];
         this.dealer = dealer;
-        choices = new LinkedBlockingQueue<Integer>();
+        choiceVersions = new long[env.config.tableSize];
         wasChecked = new AtomicBoolean(false);
         wasPenalized = new AtomicBoolean(false);
         isFree = new AtomicBoolean(true);
+        freeSinceNanos = System.nanoTime();
+        keyPresses = new KeyPressRing(env.config.featureSize, env.metrics.counter("player.keys.dropped"),
+                env.metrics.counter("player.keys.coalesced"));
         tableReady = new AtomicBoolean(true);
         wasShuffled = new AtomicBoolean(false);
+        freezeTime = env.metrics.histogram("player.freeze");
+        frozenMillis = env.metrics.counter("player." + (id + 1) + ".frozenMillis");
+        penalties = env.metrics.counter("player." + (id + 1) + ".penalties");
+        claims = env.metrics.counter("player.claims");
     }
 
     /**
@@ -135,11 +204,17 @@ public class Player implements Runnable {
         if (!human)
         {
             AIpool = new LinkedList<Integer>();
-            for(int i = 0; i < env.config.rows*env.config.columns; i++)
-                AIpool.add(i);
             aiRun = new AtomicBoolean(false);
             createArtificialIntelligence();
         }
+        if(resumeFreezeMillis > 0)
+        {
+            isFree.set(false);
+            freeze(resumeFreezeMillis);
+            env.ui.setFreeze(id, -1);
+            freeSinceNanos = System.nanoTime();
+            isFree.set(true);
+        }
         while (!terminate)
         {
             checkIfTableReady();
@@ -147,15 +222,14 @@ public class Player implements Runnable {
                 break;
             waitForSet();
             waitForRespond();
-            if((choices.size() < env.config.featureSize & !wasPenalized.get()) || (choices.size() == env.config.featureSize & wasPenalized.get()) & !tableReady.get() )
-                continue;
+            if(!wasChecked.get())
+                continue; // no verdict: there was no claim, or the dealer dropped it
             updatePenaltytime();
         }
         if (!human) try { aiThread.join(); } catch (InterruptedException ignored) {}
         synchronized(isFree)
         {
-            isFree.set(true);
-            while(isFree.get())
+            while(!released)
             {
                 try
                 {
@@ -176,22 +250,28 @@ public class Player implements Runnable {
             env.logger.info("Thread " + Thread.currentThread().getName() + " starting.");
             while (!terminate)
             {
+                // pressing may block on a full key queue, so it is done without holding aiRun
+                for(int slot: table.tokenSlots(id))
+                    pressKey(slot);
+                AIpool.clear();
+                for(int slot = table.nextOccupiedSlot(0); slot != -1; slot = table.nextOccupiedSlot(slot + 1))
+                    AIpool.add(slot);
+                Collections.shuffle(AIpool);
+                if("hint".equals(strategy))
+                    moveSetToFront(AIpool);
+                for(int j = 0; j < Math.min(env.config.featureSize, AIpool.size()); j++)
+                    pressKey(AIpool.get(j));
                 synchronized(aiRun)
                 {
-                    while(choices.peek() != null)
-                        keyPressed(choices.peek());
-                    Collections.shuffle(AIpool);
-                    int cards = table.countCards();
-                    while(cards < AIpool.size() & dealer.deck.isEmpty())
-                        AIpool.remove(AIpool.size()-1);
-                    for(int j = 0; j < env.config.featureSize; j++)
-                        keyPressed(AIpool.get(j));
                     aiRun.set(false);
-                    while(!aiRun.get())
+                    wakeUp();
+                    while(!aiRun.get() & !terminate)
                     {
                         try
                         {
+                            GameEvents.PlayerWait waiting = GameEvents.PlayerWait.start(id, "aiRun");
                             aiRun.wait();
+                            waiting.commit();
                         } catch(InterruptedException ignored){}
                     }
                    
@@ -202,11 +282,47 @@ public class Player implements Runnable {
         aiThread.start();
     }
 
+    /**
+     * Moves the slots of a legal set on the table (if there is one) to the front of the AI pool.
+     */
+    private void moveSetToFront(LinkedList<Integer> pool)
+    {
+        List<Integer> cards = new ArrayList<Integer>();
+        for(int slot: pool)
+        {
+            Integer card = table.slotToCard[slot];
+            if(card != null)
+                cards.add(card);
+        }
+        List<int[]> sets = env.util.findSets(cards, 1);
+        if(sets.isEmpty())
+            return;
+        for(int card: sets.get(0))
+        {
+            Integer slot = table.cardToSlot[card];
+            if(slot != null && pool.remove(slot))
+                pool.addFirst(slot);
+        }
+    }
+
     /**
      * Called when the game should be terminated.
      */
     public void terminate() {
         terminate = true;
+        keyPresses.setOpen(false);
+        AtomicBoolean ai = aiRun;
+        if(ai != null)
+            synchronized(ai)
+            {
+                ai.set(true);
+                ai.notifyAll();
+            }
+        synchronized(wasChecked)
+        {
+            wasChecked.notifyAll();
+        }
+        wakeUp();
     }
 
     /**
@@ -216,29 +332,66 @@ public class Player implements Runnable {
      */
     public void keyPressed(int slot)
     {
-        if(table.slotToCard[slot] != null && isFree.get())
+        long version = table.slotVersion(slot);
+        if(table.isOccupied(slot) && isFree.get())
         {
-            synchronized(choices)
+            if(!table.removeToken(id, slot) && table.countTokens(id) < env.config.featureSize)
             {
-                if(choices.contains(slot))
-                {
-                    choices.remove(slot);
-                    env.ui.removeToken(id, slot);
-                }
-                else
-                {
-                    if(choices.size() < env.config.featureSize)
-                    {
-                        choices.add(slot);
-                        env.ui.placeToken(id, slot);
-                    }
-                }
-                wasPenalized.set(false);
-                choices.notifyAll();
+                choiceVersions[slot] = version; // published by the token CAS
+                table.placeToken(id, slot);
             }
+            wasPenalized.set(false);
+            wakeUp();
         }
     }
 
+    /**
+     * Called by the keyboard (on the event dispatch thread) when a key is pressed. The press is queued for the
+     * player thread, so the keyboard never waits for the game state.
+     *
+     * @param slot  - the slot corresponding to the key pressed.
+     * @param nanos - System.nanoTime() of the press.
+     * @return - false iff the press was dropped because too many presses are waiting.
+     */
+    public boolean keyEvent(int slot, long nanos)
+    {
+        if(!human)
+            return false; // the AI thread is the only one pressing the keys of a computer player
+        boolean queued = keyPresses.offer(slot, nanos, false);
+        wakeUp();
+        return queued;
+    }
+
+    /**
+     * Called by the AI thread to press a key, waiting while the player thread is behind on the presses.
+     *
+     * @param slot - the slot corresponding to the key pressed.
+     */
+    private void pressKey(int slot)
+    {
+        if(keyPresses.offer(slot, System.nanoTime(), true))
+            wakeUp();
+    }
+
+    /**
+     * Applies the queued key presses in order. Presses made while the player was not free are dropped (before
+     * toggle pairs are skipped), just as keyPressed ignores them.
+     */
+    private void drainKeyPresses()
+    {
+        keyPresses.drain(freeSinceNanos, (slot, nanos) -> keyPressed(slot));
+    }
+
+    /**
+     * Wakes the player thread up if it is waiting for its choices to change.
+     */
+    public void wakeUp()
+    {
+        Thread thread = playerThread;
+        if(thread != null)
+            LockSupport.unpark(thread);
+    }
+
     /**
      * Award a point to a player and perform other related actions.
      *
@@ -256,6 +409,8 @@ public class Player implements Runnable {
      * Penalize a player and perform other related actions.
      */
     public void penalty() {
+        penaltyCount++; // only the dealer penalizes
+        penalties.increment();
         wasPenalized.set(true);
     }
 
@@ -263,128 +418,202 @@ public class Player implements Runnable {
         return score;
     }
 
+    /**
+     * Restores the score and freeze of a checkpointed game (before the player thread starts).
+     *
+     * @param score        - the score to restore.
+     * @param freezeMillis - the milliseconds the player was still frozen for.
+     */
+    public void restore(int score, long freezeMillis)
+    {
+        this.score = score;
+        env.ui.setScore(id, score);
+        resumeFreezeMillis = freezeMillis;
+    }
+
+    /**
+     * @param now - System.currentTimeMillis().
+     * @return - the milliseconds the player is still frozen for.
+     */
+    long freezeRemaining(long now)
+    {
+        long until = frozenUntil;
+        return until == 0 ? 0 : Math.max(0, until - now);
+    }
+
+    public int penaltyCount() {
+        return penaltyCount;
+    }
+
+    public int claimCount() {
+        return claimCount;
+    }
+
+    /**
+     * @return - the total time from the table changes to the player's claims.
+     */
+    public long reactionNanos() {
+        return reactionNanos;
+    }
+
+    public int verdictCount() {
+        return verdictCount;
+    }
+
+    /**
+     * @return - the total time from the player's claims to the dealer's verdicts.
+     */
+    public long claimLatencyNanos() {
+        return claimLatencyNanos;
+    }
+
+    /**
+     * Called by the dealer when it decided on the player's claim.
+     *
+     * @param latencyNanos - the time since the claim.
+     */
+    void verdict(long latencyNanos)
+    {
+        verdictCount++; // only the dealer gives verdicts
+        claimLatencyNanos += latencyNanos;
+    }
+
     private void checkIfTableReady()
     {
         synchronized(tableReady)
         {
             if(!tableReady.get())
-            {
                 isFree.set(false);
-                if(wasShuffled.get())
-                {
-                    choices.clear();
-                }
+            if(wasShuffled.get())
+            {
+                // the reshuffle is handled even if the table got ready again before we got here
+                table.removeTokens(id);
                 wasShuffled.set(false);
             }
             while(!tableReady.get())
             {
                 try
                 {
+                    GameEvents.PlayerWait waiting = GameEvents.PlayerWait.start(id, "tableReady");
                     tableReady.wait();
+                    waiting.commit();
                 }catch(InterruptedException ignored){}
             }
+            freeSinceNanos = System.nanoTime();
             isFree.set(true);
         }
     }
 
     private void waitForSet()
     {
+        long waitStart = System.nanoTime(); // the player reacts from here or from the last table change
+        keyPresses.setOpen(true);
         if(!human)
             runAI();
-        synchronized(choices)
+        drainKeyPresses();
+        // a penalized player claims again only after changing a choice, and never with fewer tokens than a set
+        while(table.countTokens(id) < env.config.featureSize || wasPenalized.get())
         {
-            while((choices.size() < env.config.featureSize & !wasPenalized.get()) || (choices.size() == env.config.featureSize & wasPenalized.get()))
+            if(!tableReady.get() || terminate)
             {
-                if(!tableReady.get())
-                {
-                    return;
-                }
-                try
-                {
-                    choices.wait();
-                }catch(InterruptedException ignored){}
+                keyPresses.setOpen(false);
+                return;
             }
+            if(!human && !aiRun.get())
+                runAI(); // the AI is done but some of its choices were taken off the table, choose again
+            GameEvents.PlayerWait waiting = GameEvents.PlayerWait.start(id, "choices");
+            LockSupport.park(this);
+            waiting.commit();
+            drainKeyPresses();
+        }
+        keyPresses.setOpen(false);
+        isFree.set(false);
+        claimNanos = System.nanoTime();
+        claimCount++;
+        reactionNanos += claimNanos - Math.max(table.changedNanos(), waitStart);
+        claims.increment();
+        synchronized(dealer.setSem)
+        {
             dealer.setSem.add(id);
-            isFree.set(false);
-            try
-            {
-                dealer.setSem.notifyAll();
-            }catch(IllegalMonitorStateException ignored){}
+            dealer.setSem.notifyAll();
         }
     }
 
+    /**
+     * Waits for the verdict on the player's claim, or for the dealer to drop it (stale, or released at a reshuffle).
+     * The player stays busy while its claim is queued, so the dealer checks the choices it was claimed with.
+     */
     private void waitForRespond()
     {
-        if((choices.size() < env.config.featureSize & !wasPenalized.get()) || (choices.size() == env.config.featureSize & wasPenalized.get()) & !tableReady.get())
-            return;
         synchronized(wasChecked)
         {
-            while(!wasChecked.get())
+            while(!wasChecked.get() & !terminate & dealer.setSem.Sets.contains(id))
             {
-                if((choices.size() < env.config.featureSize & !wasPenalized.get()) || (choices.size() == env.config.featureSize & wasPenalized.get()) & !tableReady.get())
-                    return;
                 try
                 {
+                    GameEvents.PlayerWait waiting = GameEvents.PlayerWait.start(id, "wasChecked");
                     wasChecked.wait();
+                    waiting.commit();
                 }catch(InterruptedException ignored){}
             }
             if (wasShuffled.get())
-                choices.clear(); 
+                table.removeTokens(id);
         }
     }
 
     private void updatePenaltytime()
     {
+        long freezeStart = System.nanoTime();
         wasChecked.set(false);
         if (wasShuffled.get())
-            choices.clear();
-        //synchronized(choices)
+            table.removeTokens(id);
         {
             if(wasPenalized.get())
-            {
-                for(Long i = env.config.penaltyFreezeMillis; i > 0; i = i - 1000)
-                {
-                    if(wasShuffled.get())
-                        break;
-                    env.ui.setFreeze(id, i);
-                    try
-                    {
-                        Thread.sleep(1000);
-                    }catch(InterruptedException ignored){}
-                }
-            }
+                freeze(env.config.penaltyFreezeMillis);
             else
             {
-                choices.clear();
-                for(Long i = env.config.pointFreezeMillis; i > 0; i = i - 1000)
-                {
-                    if(wasShuffled.get())
-                        break;
-                    env.ui.setFreeze(id, i);
-                    try
-                    {
-                        Thread.sleep(1000);
-                    }catch(InterruptedException ignored){}
-                }   
+                table.removeTokens(id);
+                freeze(env.config.pointFreezeMillis);
             }
             env.ui.setFreeze(id, -1);
+            freeSinceNanos = System.nanoTime();
             isFree.set(true);
+            freezeTime.recordSince(freezeStart);
+            frozenMillis.add((System.nanoTime() - freezeStart) / 1000000);
             if(wasShuffled.get())
                 wasPenalized.set(false);
         }
     }
 
+    /**
+     * Counts a freeze down on the display, a second at a time (a reshuffle cuts it short).
+     */
+    private void freeze(long millis)
+    {
+        frozenUntil = System.currentTimeMillis() + (millis + 999) / 1000 * 1000;
+        for(Long i = millis; i > 0; i = i - 1000)
+        {
+            if(wasShuffled.get())
+                break;
+            env.ui.setFreeze(id, i);
+            try
+            {
+                Thread.sleep(1000);
+            }catch(InterruptedException ignored){}
+        }
+        frozenUntil = 0;
+    }
+
+    /**
+     * Starts an AI run, unless one is still in progress (the player thread must not wait for it: the AI may be
+     * waiting for the player thread to take its key presses).
+     */
     protected void runAI()
     {
         synchronized(aiRun)
         {
-            while(aiRun.get())
-            {
-                try{
-                    aiRun.wait();
-                }catch(InterruptedException ignored){}
-                catch(IllegalMonitorStateException ignored){}
-            }
+            if(aiRun.get())
+                return;
             aiRun.set(true);
             try{
                 aiRun.notifyAll();
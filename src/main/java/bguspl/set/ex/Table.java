@@ -1,15 +1,25 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.GameEvents;
+import bguspl.set.LatencyHistogram;
+import bguspl.set.Metrics;
 
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongBinaryOperator;
 import java.util.stream.Collectors;
 
 /**
  * This class contains the data that is visible to the player.
  *
+ * Only the dealer thread changes the table. Players read it optimistically: every slot carries a version stamp
+ * which is odd while the dealer is changing the slot and advances on every change, so a player records the version
+ * when selecting a slot and the dealer detects stale selections when the claim is checked.
+ * Player tokens are kept in two bitmaps updated with CAS, one per player (its slots) and one per slot (its players).
+ *
  * @inv slotToCard[x] == y iff cardToSlot[y] == x
  */
 public class Table {
@@ -29,6 +39,58 @@ public class Table {
      */
     protected final Integer[] cardToSlot; // slot per card (if any)
 
+    /**
+     * Occupancy bitmap of the slots, bit (slot % 64) of word (slot / 64) is set iff the slot holds a card.
+     * Written by the dealer only; its words are read atomically, so players see every published change.
+     */
+    private final AtomicLongArray occupied;
+
+    /**
+     * The number of cards currently on the table.
+     */
+    private volatile int cardCount;
+
+    /**
+     * Version stamp per slot (odd while the slot is being changed).
+     */
+    private final AtomicLongArray slotVersions;
+
+    /**
+     * The number of table changes (transactions) published so far.
+     */
+    private volatile long epoch;
+
+    /**
+     * System.nanoTime() when the last table change was published.
+     */
+    private volatile long changedNanos = System.nanoTime();
+
+    /**
+     * Slots holding each player's tokens: bit (slot % 64) of word (player * slotWords + slot / 64).
+     */
+    private final AtomicLongArray playerTokens;
+
+    /**
+     * Players holding a token on each slot: bit (player % 64) of word (slot * playerWords + player / 64).
+     */
+    private final AtomicLongArray slotTokens;
+
+    /**
+     * The number of words per player in playerTokens and per slot in slotTokens.
+     */
+    private final int slotWords;
+    private final int playerWords;
+
+    /**
+     * Metrics: the time taken by each transaction commit and the number of cards moved.
+     */
+    private final LatencyHistogram commitTime;
+    private final Metrics.Counter cardsPlaced;
+    private final Metrics.Counter cardsRemoved;
+
+    private static final LongBinaryOperator SET_BITS = (word, bits) -> word | bits;
+    private static final LongBinaryOperator CLEAR_BITS = (word, bits) -> word & ~bits;
+
     /**
      * Constructor for testing.
      *
@@ -41,6 +103,25 @@ public class Table {
         this.env = env;
         this.slotToCard = slotToCard;
         this.cardToSlot = cardToSlot;
+        long[] occupied = new long[(slotToCard.length + 63) >>> 6];
+        int cards = 0;
+        for (int slot = 0; slot < slotToCard.length; slot++)
+            if (slotToCard[slot] != null) {
+                occupied[slot >>> 6] |= 1L << slot;
+                ++cards;
+            }
+        this.occupied = new AtomicLongArray(occupied);
+        this.cardCount = cards;
+        this.slotVersions = new AtomicLongArray(slotToCard.length);
+        this.slotWords = occupied.length;
+        this.playerWords = env.config.playerWords;
+        this.playerTokens = new AtomicLongArray(env.config.players * slotWords);
+        this.slotTokens = new AtomicLongArray(slotToCard.length * playerWords);
+        this.commitTime = env.metrics.histogram("table.commit");
+        this.cardsPlaced = env.metrics.counter("table.cardsPlaced");
+        this.cardsRemoved = env.metrics.counter("table.cardsRemoved");
+        env.metrics.gauge("table.cards", this::countCards);
+        env.metrics.gauge("table.epoch", this::epoch);
     }
 
     /**
@@ -72,11 +153,78 @@ public class Table {
      * @return - the number of cards on the table.
      */
     public int countCards() {
-        int cards = 0;
-        for (Integer card : slotToCard)
-            if (card != null)
-                ++cards;
-        return cards;
+        return cardCount;
+    }
+
+    /**
+     * Checks whether a slot currently holds a card.
+     *
+     * @param slot - the slot to check.
+     * @return - true iff there is a card in the slot.
+     */
+    public boolean isOccupied(int slot) {
+        return (occupied.get(slot >>> 6) & (1L << slot)) != 0;
+    }
+
+    /**
+     * Reads the version stamp of a slot. A read that overlaps a change returns the version preceding the change,
+     * which will no longer be current once the change is done.
+     *
+     * @param slot - the slot to read.
+     * @return - the (even) version of the slot.
+     */
+    public long slotVersion(int slot) {
+        return slotVersions.get(slot) & ~1L;
+    }
+
+    /**
+     * Checks whether a slot was left untouched since a version stamp was read.
+     *
+     * @param slot    - the slot to check.
+     * @param version - a version previously returned by slotVersion.
+     * @return - true iff the slot did not change since.
+     */
+    public boolean isCurrent(int slot, long version) {
+        return slotVersions.get(slot) == version;
+    }
+
+    /**
+     * Finds the first slot holding a card, starting from a given slot.
+     *
+     * @param from - the slot to start searching from (inclusive).
+     * @return - the first occupied slot >= from, or -1 if there is none.
+     */
+    public int nextOccupiedSlot(int from) {
+        return nextSlot(from, 0L);
+    }
+
+    /**
+     * Finds the first empty slot, starting from a given slot.
+     *
+     * @param from - the slot to start searching from (inclusive).
+     * @return - the first empty slot >= from, or -1 if there is none.
+     */
+    public int nextEmptySlot(int from) {
+        return nextSlot(from, -1L);
+    }
+
+    /**
+     * Scans the occupancy bitmap word by word for the first matching slot.
+     *
+     * @param from - the slot to start searching from (inclusive).
+     * @param flip - 0 to look for occupied slots, -1 (all ones) to look for empty ones.
+     * @return - the first matching slot >= from, or -1 if there is none.
+     */
+    private int nextSlot(int from, long flip) {
+        int word = from >>> 6;
+        if (word >= slotWords) return -1;
+        long bits = (occupied.get(word) ^ flip) & (-1L << from);
+        while (bits == 0) {
+            if (++word == slotWords) return -1;
+            bits = occupied.get(word) ^ flip;
+        }
+        int slot = (word << 6) + Long.numberOfTrailingZeros(bits);
+        return slot < slotToCard.length ? slot : -1;
     }
 
     /**
@@ -87,14 +235,7 @@ public class Table {
      * @post - the card placed is on the table, in the assigned slot.
      */
     public void placeCard(int card, int slot) {
-        try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {}
-
-        cardToSlot[card] = slot;
-        slotToCard[slot] = card;
-
-        env.ui.placeCard(card, slot);
+        beginTransaction().place(card, slot).commit();
     }
 
     /**
@@ -102,31 +243,183 @@ public class Table {
      * @param slot - the slot from which to remove the card.
      */
     public void removeCard(int slot) {
-        try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {}
+        beginTransaction().remove(slot).commit();
+    }
 
-        //Backend
-        if (slotToCard[slot] != null)
-        {
-            cardToSlot[slotToCard[slot]] = null;
-            slotToCard[slot] = null;
+    /**
+     * The number of table changes published so far.
+     *
+     * @return - the current table epoch.
+     */
+    public long epoch() {
+        return epoch;
+    }
+
+    /**
+     * @return - System.nanoTime() when the last table change was published (players react to it).
+     */
+    public long changedNanos() {
+        return changedNanos;
+    }
+
+    /**
+     * Starts staging a batch of card removals and placements.
+     *
+     * @return - an empty transaction on this table.
+     */
+    public Transaction beginTransaction() {
+        return new Transaction();
+    }
+
+    /**
+     * A batch of card removals and placements published as one table epoch. The dealer stages the changes and
+     * commits them; every slot touched by the batch is marked as changing for the whole commit, so a selection
+     * racing with it is detected as stale while the rest of the table stays valid.
+     */
+    public class Transaction {
+
+        private static final int REMOVE = -1;
+
+        /**
+         * Staged operations in order, as (slot, card) pairs (card == REMOVE for a removal).
+         */
+        private int[] ops = new int[8];
+        private int size;
 
-            //frontEnd
+        private Transaction() {}
 
-            env.ui.removeCard(slot);
-            env.ui.removeTokens(slot);
+        /**
+         * Stages placing a card in a slot.
+         * @param card - the card id to place in the slot.
+         * @param slot - the slot in which the card should be placed.
+         * @return - this transaction.
+         */
+        public Transaction place(int card, int slot) {
+            return stage(slot, card);
+        }
+
+        /**
+         * Stages removing the card from a slot (if any).
+         * @param slot - the slot from which to remove the card.
+         * @return - this transaction.
+         */
+        public Transaction remove(int slot) {
+            return stage(slot, REMOVE);
+        }
+
+        private Transaction stage(int slot, int card) {
+            if (size == ops.length) ops = Arrays.copyOf(ops, size * 2);
+            ops[size++] = slot;
+            ops[size++] = card;
+            return this;
+        }
+
+        /**
+         * Applies the staged changes, publishes them as a new epoch and then updates the display.
+         * Returns without waiting for the dealing animation.
+         *
+         * @post - every staged removal and placement is on the table.
+         */
+        public void commit() {
+            long start = System.nanoTime();
+            GameEvents.TableChange event = new GameEvents.TableChange();
+            event.begin();
+            boolean[] touched = new boolean[slotToCard.length];
+            for (int i = 0; i < size; i += 2)
+                if (!touched[ops[i]]) {
+                    touched[ops[i]] = true;
+                    slotVersions.incrementAndGet(ops[i]); // odd: changing
+                }
+
+            //Backend
+            boolean[] removed = new boolean[size / 2];
+            for (int i = 0; i < size; i += 2) {
+                if (ops[i + 1] == REMOVE) {
+                    if (removed[i / 2] = clearSlot(ops[i])) {
+                        cardsRemoved.increment();
+                        event.removed++;
+                    }
+                } else {
+                    fillSlot(ops[i + 1], ops[i]);
+                    cardsPlaced.increment();
+                    event.placed++;
+                }
+            }
+            epoch = epoch + 1; // single writer (the dealer)
+            assert isConsistent() : "slotToCard and cardToSlot disagree after epoch " + epoch;
+
+            for (int slot = 0; slot < touched.length; slot++)
+                if (touched[slot]) slotVersions.incrementAndGet(slot); // even: published
+            changedNanos = System.nanoTime();
+
+            //frontEnd (the dealing delay is animated by the user interface, not waited for here)
+            for (int i = 0; i < size; i += 2) {
+                if (ops[i + 1] != REMOVE) {
+                    env.ui.placeCard(ops[i + 1], ops[i]);
+                } else if (removed[i / 2]) {
+                    env.ui.removeCard(ops[i]);
+                    env.ui.removeTokens(ops[i]);
+                }
+            }
+            commitTime.recordSince(start);
+            event.epoch = epoch;
+            event.commit();
         }
     }
 
+    /**
+     * Checks the class invariant (and the occupancy bitmap) from the dealer thread.
+     *
+     * @return - true iff slotToCard[x] == y iff cardToSlot[y] == x, and the bitmap and count match slotToCard.
+     */
+    boolean isConsistent() {
+        int cards = 0;
+        for (int slot = 0; slot < slotToCard.length; slot++) {
+            Integer card = slotToCard[slot];
+            if ((card != null) != isOccupied(slot)) return false;
+            if (card == null) continue;
+            ++cards;
+            if (cardToSlot[card] == null || cardToSlot[card] != slot) return false;
+        }
+        for (int card = 0; card < cardToSlot.length; card++)
+            if (cardToSlot[card] != null && !Integer.valueOf(card).equals(slotToCard[cardToSlot[card]])) return false;
+        return cards == cardCount;
+    }
+
+    private void fillSlot(int card, int slot) {
+        if (slotToCard[slot] == null) {
+            occupied.set(slot >>> 6, occupied.get(slot >>> 6) | 1L << slot); // single writer (the dealer)
+            cardCount = cardCount + 1; // single writer (the dealer)
+        } else cardToSlot[slotToCard[slot]] = null;
+        cardToSlot[card] = slot;
+        slotToCard[slot] = card;
+    }
+
+    private boolean clearSlot(int slot) {
+        if (slotToCard[slot] == null)
+            return false;
+        cardToSlot[slotToCard[slot]] = null;
+        slotToCard[slot] = null;
+        occupied.set(slot >>> 6, occupied.get(slot >>> 6) & ~(1L << slot)); // single writer (the dealer)
+        cardCount = cardCount - 1; // single writer (the dealer)
+        clearTokens(slot);
+        return true;
+    }
+
     /**
      * Places a player token on a grid slot.
      * @param player - the player the token belongs to.
      * @param slot   - the slot on which to place the token.
+     * @return       - true iff the player did not have a token there already.
      */
-    public void placeToken(int player, int slot)
+    public boolean placeToken(int player, int slot)
     {
+        long bit = 1L << slot;
+        if ((playerTokens.getAndAccumulate(player * slotWords + (slot >>> 6), bit, SET_BITS) & bit) != 0)
+            return false;
+        slotTokens.getAndAccumulate(slot * playerWords + (player >>> 6), 1L << player, SET_BITS);
         env.ui.placeToken(player, slot);
+        return true;
     }
 
     /**
@@ -135,8 +428,102 @@ public class Table {
      * @param slot   - the slot from which to remove the token.
      * @return       - true iff a token was successfully removed.
      */
-    public void removeToken(int player, int slot) {
-        
+    public boolean removeToken(int player, int slot) {
+        long bit = 1L << slot;
+        if ((playerTokens.getAndAccumulate(player * slotWords + (slot >>> 6), bit, CLEAR_BITS) & bit) == 0)
+            return false;
+        slotTokens.getAndAccumulate(slot * playerWords + (player >>> 6), 1L << player, CLEAR_BITS);
         env.ui.removeToken(player, slot);
+        return true;
+    }
+
+    /**
+     * Removes all the tokens of a player.
+     * @param player - the player the tokens belong to.
+     */
+    public void removeTokens(int player) {
+        for (int word = 0; word < slotWords; word++)
+            for (long bits = playerTokens.getAndSet(player * slotWords + word, 0L); bits != 0; bits &= bits - 1) {
+                int slot = (word << 6) + Long.numberOfTrailingZeros(bits);
+                slotTokens.getAndAccumulate(slot * playerWords + (player >>> 6), 1L << player, CLEAR_BITS);
+                env.ui.removeToken(player, slot);
+            }
+    }
+
+    /**
+     * Removes the tokens of all the players from a slot (the display is updated by the caller).
+     * @param slot - the slot from which to remove the tokens.
+     */
+    private void clearTokens(int slot) {
+        for (int word = 0; word < playerWords; word++)
+            for (long bits = slotTokens.getAndSet(slot * playerWords + word, 0L); bits != 0; bits &= bits - 1) {
+                int player = (word << 6) + Long.numberOfTrailingZeros(bits);
+                playerTokens.getAndAccumulate(player * slotWords + (slot >>> 6), 1L << slot, CLEAR_BITS);
+            }
+    }
+
+    /**
+     * Checks whether a player has a token on a slot.
+     * @param player - the player the token belongs to.
+     * @param slot   - the slot to check.
+     * @return       - true iff the player has a token on the slot.
+     */
+    public boolean hasToken(int player, int slot) {
+        return (playerTokens.get(player * slotWords + (slot >>> 6)) & (1L << slot)) != 0;
+    }
+
+    /**
+     * Counts the tokens a player has on the table.
+     * @param player - the player the tokens belong to.
+     * @return       - the number of slots holding the player's tokens.
+     */
+    public int countTokens(int player) {
+        int tokens = 0;
+        for (int word = 0; word < slotWords; word++)
+            tokens += Long.bitCount(playerTokens.get(player * slotWords + word));
+        return tokens;
+    }
+
+    /**
+     * Lists the slots holding a player's tokens.
+     * @param player - the player the tokens belong to.
+     * @return       - the slots in ascending order.
+     */
+    public int[] tokenSlots(int player) {
+        long[] words = new long[slotWords];
+        int tokens = 0;
+        for (int word = 0; word < slotWords; word++)
+            tokens += Long.bitCount(words[word] = playerTokens.get(player * slotWords + word));
+        int[] slots = new int[tokens];
+        int i = 0;
+        for (int word = 0; word < slotWords; word++)
+            for (long bits = words[word]; bits != 0; bits &= bits - 1)
+                slots[i++] = (word << 6) + Long.numberOfTrailingZeros(bits);
+        return slots;
+    }
+
+    /**
+     * Builds a slot bitmap (in the layout of the token bitmaps) out of a list of slots.
+     * @param slots - the slots to include.
+     * @return      - the bitmap words.
+     */
+    public long[] slotMask(int[] slots) {
+        long[] mask = new long[slotWords];
+        for (int slot : slots)
+            mask[slot >>> 6] |= 1L << slot;
+        return mask;
+    }
+
+    /**
+     * Checks whether a player has a token on any of the slots of a bitmap.
+     * @param player - the player the tokens belong to.
+     * @param mask   - a bitmap built by slotMask.
+     * @return       - true iff the player's tokens and the bitmap intersect.
+     */
+    public boolean hasTokenOn(int player, long[] mask) {
+        for (int word = 0; word < slotWords; word++)
+            if ((playerTokens.get(player * slotWords + word) & mask[word]) != 0)
+                return true;
+        return false;
     }
 }
@@ -0,0 +1,233 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+import bguspl.set.Metrics;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Watches the dealer, player and computer threads of a game for lost handshakes. Progress is sampled with the
+ * ThreadMXBean: a thread progresses whenever its state, the monitor it waits on or its wait/block counts change.
+ * A thread that waits on a handshake monitor (tableReady, wasChecked, isFree, aiRun) without progress for longer
+ * than config.watchdogMillis is reported together with the flags of every player, and (if config.watchdogRecover)
+ * the dealer is asked to start a new turn, which releases every handshake.
+ * <p>
+ * A human player parked for key presses and a frozen player are idle, not stalled. The dealer sleeps on setSem until
+ * a claim, the end of the turn or a due checkpoint (a timed wait, which the claims and the end of the game cut
+ * short), so waiting there with an empty claim queue is idle too: it is stalled only when it stops progressing
+ * anywhere else, or while a claim is waiting for it.
+ */
+public class Watchdog implements Runnable {
+
+    /**
+     * The progress of a single watched thread.
+     */
+    private static class Watched {
+        final String role;
+        Thread thread;
+        Thread.State state;
+        int monitor;
+        long waits = -1;
+        long since;
+
+        Watched(String role) {
+            this.role = role;
+        }
+
+        /**
+         * Samples the thread.
+         *
+         * @return - the thread info (null if the thread is not alive).
+         */
+        ThreadInfo sample(ThreadMXBean threads, long now) {
+            ThreadInfo info = thread == null ? null : threads.getThreadInfo(thread.getId());
+            if (info == null) {
+                state = null;
+                since = now;
+                return null;
+            }
+            LockInfo lock = info.getLockInfo();
+            int lockHash = lock == null ? 0 : lock.getIdentityHashCode();
+            long count = info.getWaitedCount() + info.getBlockedCount();
+            if (info.getThreadState() != state || lockHash != monitor || count != waits) {
+                state = info.getThreadState();
+                monitor = lockHash;
+                waits = count;
+                since = now;
+            }
+            return info;
+        }
+
+        long idleMillis(long now) {
+            return (now - since) / 1000000;
+        }
+    }
+
+    private final Env env;
+    private final Dealer dealer;
+    private final Table table;
+    private final Player[] players;
+    private final Thread dealerThread;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Handshake monitor names by identity hash code.
+     */
+    private final Map<Integer, String> monitors = new HashMap<>();
+
+    private final Watched dealerProgress = new Watched("dealer");
+    private final Watched[] playerProgress;
+    private final Watched[] aiProgress;
+
+    private final Metrics.Counter stalls;
+    private final Metrics.Counter recoveries;
+
+    private volatile boolean terminate;
+    private Thread thread;
+
+    /**
+     * True while the current stall was already reported (reset when every thread progresses again).
+     */
+    private boolean reported;
+
+    public Watchdog(Env env, Dealer dealer, Table table, Player[] players, Thread dealerThread) {
+        this.env = env;
+        this.dealer = dealer;
+        this.table = table;
+        this.players = players;
+        this.dealerThread = dealerThread;
+        playerProgress = new Watched[players.length];
+        aiProgress = new Watched[players.length];
+        for (Player player : players) {
+            playerProgress[player.id] = new Watched("player " + (player.id + 1));
+            aiProgress[player.id] = new Watched("computer " + (player.id + 1));
+            monitors.put(System.identityHashCode(player.tableReady), "tableReady");
+            monitors.put(System.identityHashCode(player.wasChecked), "wasChecked");
+            monitors.put(System.identityHashCode(player.isFree), "isFree");
+            monitors.put(System.identityHashCode(player), "choices");
+        }
+        monitors.put(System.identityHashCode(dealer.setSem), "setSem");
+        stalls = env.metrics.counter("watchdog.stalls");
+        recoveries = env.metrics.counter("watchdog.recoveries");
+    }
+
+    /**
+     * Starts watching on a daemon thread.
+     */
+    public void start() {
+        thread = new Thread(this, "watchdog-" + dealerThread.getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching and waits for the watchdog thread to exit.
+     */
+    public void stop() {
+        terminate = true;
+        if (thread == null) return;
+        thread.interrupt();
+        try { thread.join(); } catch (InterruptedException ignored) {}
+    }
+
+    @Override
+    public void run() {
+        while (!terminate) {
+            try {
+                Thread.sleep(Math.max(10, env.config.watchdogMillis / 4)); // the configuration may be reloaded
+            } catch (InterruptedException e) {
+                break;
+            }
+            check(System.nanoTime());
+        }
+    }
+
+    /**
+     * Samples every game thread once and reports (and recovers) a new stall.
+     */
+    void check(long now) {
+        if (env.config.watchdogMillis <= 0) return; // disabled by a reloaded configuration
+        dealerProgress.thread = dealerThread;
+        dealerProgress.sample(threads, now);
+        boolean stalled = dealerProgress.state != null && dealerProgress.idleMillis(now) > env.config.watchdogMillis
+                // sleeping until a claim or the end of the turn is no stall, unless a claim is waiting
+                && !(dealerProgress.monitor == System.identityHashCode(dealer.setSem) && dealer.setSem.Sets.isEmpty());
+
+        for (Player player : players) {
+            Watched progress = playerProgress[player.id];
+            Watched ai = aiProgress[player.id];
+            progress.thread = player.playerThread;
+            ai.thread = player.aiThread;
+            progress.sample(threads, now);
+            ai.sample(threads, now);
+            if (player.aiRun != null) monitors.put(System.identityHashCode(player.aiRun), "aiRun");
+            stalled |= isStalled(player, progress, ai, now);
+        }
+
+        if (!stalled) {
+            reported = false;
+            return;
+        }
+        if (reported) return;
+        reported = true;
+        stalls.increment();
+        env.logger.severe("watchdog: game threads stalled for more than " + env.config.watchdogMillis + "ms\n" + diagnostic(now));
+        long[] deadlocked = threads.findDeadlockedThreads();
+        if (deadlocked != null)
+            for (ThreadInfo info : threads.getThreadInfo(deadlocked, true, true))
+                env.logger.severe("watchdog: deadlocked " + info);
+        if (env.config.watchdogRecover) {
+            recoveries.increment();
+            env.logger.severe("watchdog: forcing a new turn");
+            dealer.resetTurn();
+        }
+    }
+
+    private boolean isStalled(Player player, Watched progress, Watched ai, long now) {
+        if (progress.state == null || progress.idleMillis(now) <= env.config.watchdogMillis) return false;
+        String monitor = monitors.get(progress.monitor);
+        if (monitor == null) return false; // running, sleeping through a freeze, or not started
+        if (!"choices".equals(monitor)) return true;
+        // waiting for key presses: only a lost handshake if the computer is waiting for the player as well
+        return ai.state != null && ai.idleMillis(now) > env.config.watchdogMillis && "aiRun".equals(monitors.get(ai.monitor));
+    }
+
+    /**
+     * @return - a compact line per game thread with the handshake flags of every player.
+     */
+    String diagnostic(long now) {
+        StringBuilder sb = new StringBuilder();
+        describe(sb, dealerProgress, now);
+        sb.append(" queue=").append(dealer.setSem.Sets).append(" cards=").append(table.countCards())
+                .append(" deck=").append(dealer.deck.size()).append('\n');
+        for (Player player : players) {
+            describe(sb, playerProgress[player.id], now);
+            sb.append(" isFree=").append(player.isFree.get())
+                    .append(" tableReady=").append(player.tableReady.get())
+                    .append(" wasChecked=").append(player.wasChecked.get())
+                    .append(" wasShuffled=").append(player.wasShuffled.get())
+                    .append(" wasPenalized=").append(player.wasPenalized.get())
+                    .append(" tokens=").append(table.countTokens(player.id));
+            if (aiProgress[player.id].thread != null) describe(sb.append("; "), aiProgress[player.id], now);
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private void describe(StringBuilder sb, Watched progress, long now) {
+        sb.append(progress.role).append(": ");
+        if (progress.state == null) {
+            sb.append("not running");
+            return;
+        }
+        sb.append(progress.state);
+        String monitor = monitors.get(progress.monitor);
+        if (monitor != null) sb.append(" on ").append(monitor);
+        sb.append(" for ").append(progress.idleMillis(now)).append("ms");
+    }
+}
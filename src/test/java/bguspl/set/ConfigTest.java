@@ -0,0 +1,77 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConfigTest {
+
+    private final Logger logger = logger();
+
+    private static Logger logger() {
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setLevel(Level.OFF);
+        return logger;
+    }
+
+    private static Properties properties(String... keysAndValues) {
+        Properties properties = new Properties();
+        properties.put("LogLevel", "OFF");
+        for (int i = 0; i < keysAndValues.length; i += 2) properties.put(keysAndValues[i], keysAndValues[i + 1]);
+        return properties;
+    }
+
+    @Test
+    void validate_listsEveryInvalidValue() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new Config(logger,
+                properties("FeatureSize", "0", "PenaltyFreezeSeconds", "-1", "SpectatorPort", "70000")));
+        assertTrue(e.getMessage().contains("FeatureSize must be positive: 0"), e.getMessage());
+        assertTrue(e.getMessage().contains("freeze times cannot be negative"), e.getMessage());
+        assertTrue(e.getMessage().contains("SpectatorPort is not a port: 70000"), e.getMessage());
+
+        assertThrows(IllegalArgumentException.class, () -> new Config(logger, properties("Rows", "0")));
+        assertThrows(IllegalArgumentException.class, () -> new Config(logger, properties("SetCacheSize", "-1")));
+    }
+
+    @Test
+    void defaults_leaveTheOptionalServicesOff() {
+        Config config = new Config(logger, properties());
+        assertEquals(0, config.watchdogMillis);
+        assertFalse(config.configHotReload);
+        assertEquals("", config.checkpointFile);
+        assertEquals(0, config.spectatorPort);
+    }
+
+    @Test
+    void reload_takesOnlyTheReloadableProperties() {
+        Config config = new Config(logger, properties("TurnTimeoutSeconds", "60", "Rows", "3"));
+        Config next = config.reload(logger, properties("TurnTimeoutSeconds", "30", "PenaltyFreezeSeconds", "5",
+                "Rows", "4", "TableDelaySeconds", "1"));
+        assertEquals(30000, next.turnTimeoutMillis);
+        assertEquals(5000, next.penaltyFreezeMillis);
+        assertEquals(3, next.rows); // needs a restart
+        assertEquals(config.tableDelayMillis, next.tableDelayMillis); // the user interfaces keep their snapshot
+        assertEquals(60000, config.turnTimeoutMillis); // snapshots are never modified
+
+        assertSame(next, next.reload(logger, properties("TurnTimeoutSeconds", "30", "PenaltyFreezeSeconds", "5",
+                "Rows", "5")));
+        assertEquals(3000, next.reload(logger, properties("TurnTimeoutSeconds", "30")).penaltyFreezeMillis);
+    }
+
+    @Test
+    void reload_rejectsInvalidValues() {
+        Config config = new Config(logger, properties());
+        assertThrows(IllegalArgumentException.class,
+                () -> config.reload(logger, properties("PointFreezeSeconds", "-2")));
+        assertThrows(NumberFormatException.class,
+                () -> config.reload(logger, properties("TurnTimeoutSeconds", "soon")));
+    }
+}
@@ -0,0 +1,74 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConfigWatcherTest {
+
+    private Path directory;
+    private Path file;
+    private Env env;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("config");
+        file = directory.resolve("game.properties");
+        write("LogLevel=OFF\nTurnTimeoutSeconds=60\n");
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setLevel(Level.OFF);
+        env = new Env(logger, new Config(logger, file.toString()), null, null);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory);
+    }
+
+    private void write(String contents) throws IOException {
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void reload_stagesValidChangesUntilTheyAreApplied() throws IOException {
+        ConfigWatcher watcher = new ConfigWatcher(env, file.toString());
+        write("LogLevel=OFF\nTurnTimeoutSeconds=-1x\n");
+        watcher.reload();
+        assertFalse(env.applyStagedConfig()); // invalid, ignored
+
+        write("LogLevel=OFF\nTurnTimeoutSeconds=30\n");
+        watcher.reload();
+        assertEquals(60000, env.config.turnTimeoutMillis); // staged, not applied yet
+        assertTrue(env.applyStagedConfig());
+        assertEquals(30000, env.config.turnTimeoutMillis);
+
+        watcher.reload();
+        assertFalse(env.applyStagedConfig()); // nothing changed since
+    }
+
+    @Test
+    void start_watchesTheGivenFile() throws Exception {
+        ConfigWatcher watcher = new ConfigWatcher(env, file.toString());
+        watcher.start();
+        try {
+            write("LogLevel=OFF\nTurnTimeoutSeconds=45\n");
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!env.applyStagedConfig() && System.currentTimeMillis() < deadline) Thread.sleep(20);
+            assertEquals(45000, env.config.turnTimeoutMillis);
+        } finally {
+            watcher.stop();
+        }
+    }
+}
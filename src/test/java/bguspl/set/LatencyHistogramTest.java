@@ -0,0 +1,54 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LatencyHistogramTest {
+
+    @Test
+    void percentile_returnsTheLowestValueOfTheBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 0; value < 16; value++) histogram.record(value);
+        assertEquals(7, histogram.percentile(0.5)); // values below 16 have buckets of their own
+        assertEquals(15, histogram.percentile(1));
+
+        histogram = new LatencyHistogram();
+        histogram.record(96);
+        histogram.record(103); // 96..103 share a bucket, 1/8 of the power of two
+        histogram.record(104);
+        assertEquals(96, histogram.percentile(0.5));
+        assertEquals(104, histogram.percentile(1));
+        assertEquals(104, histogram.max());
+        assertEquals(101, histogram.mean());
+    }
+
+    @Test
+    void percentile_ranksTheRecordedValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 100; value >= 1; value--) histogram.record(value);
+        assertEquals(100, histogram.count());
+        assertEquals(50, histogram.mean());
+        assertEquals(48, histogram.percentile(0.5)); // 50 falls in 48..51
+        assertEquals(88, histogram.percentile(0.9)); // 90 falls in 88..95
+        assertEquals(96, histogram.percentile(0.99));
+        assertEquals(1, histogram.percentile(0));
+        assertEquals("count=100 mean=0us p50=0us p90=0us p99=0us max=0us", histogram.summaryMicros());
+    }
+
+    @Test
+    void record_handlesTheExtremes() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(0.5));
+        assertEquals(0, histogram.mean());
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(0, histogram.percentile(0.5));
+        assertEquals(15L << 59, histogram.percentile(1));
+        assertEquals(Long.MAX_VALUE, histogram.max());
+
+        LatencyHistogram.NOOP.record(10);
+        assertEquals(0, LatencyHistogram.NOOP.count());
+        assertEquals(0, LatencyHistogram.NOOP.percentile(1));
+    }
+}
@@ -0,0 +1,90 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.ObjectName;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricsTest {
+
+    @Test
+    void instruments_areRegisteredOncePerName() {
+        Metrics metrics = new Metrics(true);
+        Metrics.Counter counter = metrics.counter("claims");
+        assertSame(counter, metrics.counter("claims"));
+        counter.increment();
+        metrics.counter("claims").add(2);
+        assertSame(metrics.histogram("commit"), metrics.histogram("commit"));
+
+        AtomicLong value = new AtomicLong(5);
+        metrics.gauge("deck", () -> 1);
+        metrics.gauge("deck", value::get); // replaces the first one
+        value.set(7);
+
+        assertEquals(3, metrics.getCounters().get("claims"));
+        assertEquals(7, metrics.getGauges().get("deck"));
+        assertEquals(1, metrics.getGauges().size());
+        assertTrue(metrics.getLatencies().get("commit").startsWith("count=0 "));
+    }
+
+    @Test
+    void disabledRegistry_handsOutNoOps() {
+        Metrics metrics = Metrics.DISABLED;
+        metrics.counter("claims").increment();
+        metrics.gauge("deck", () -> 1);
+        metrics.histogram("commit").record(10);
+        assertEquals(0, metrics.counter("claims").sum());
+        assertEquals(0, metrics.histogram("commit").count());
+        assertTrue(metrics.getCounters().isEmpty());
+        assertTrue(metrics.getGauges().isEmpty());
+        assertEquals("", metrics.dump());
+    }
+
+    @Test
+    void dump_listsEveryInstrumentByKindAndName() throws Exception {
+        Metrics metrics = new Metrics(true);
+        metrics.counter("b").increment();
+        metrics.counter("a").add(2);
+        metrics.gauge("deck", () -> 70);
+        metrics.histogram("commit").record(3000);
+        assertEquals("counter a = 2\n"
+                + "counter b = 1\n"
+                + "gauge   deck = 70\n"
+                + "latency commit: count=1 mean=3us p50=2us p90=2us p99=2us max=3us\n", metrics.dump());
+
+        Path file = Files.createTempFile("metrics", ".txt");
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setLevel(Level.OFF);
+        try {
+            metrics.start(logger, "test", file.toString(), 10);
+            ObjectName name = new ObjectName("bguspl.set:type=Metrics,name=" + ObjectName.quote("test"));
+            assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!read(file).contains("counter a = 2") && System.currentTimeMillis() < deadline) Thread.sleep(10);
+            metrics.stop();
+            assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+            String report = read(file);
+            assertTrue(report.startsWith("--- test "), report);
+            assertTrue(report.contains("gauge   deck = 70\n"), report);
+        } finally {
+            metrics.stop();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
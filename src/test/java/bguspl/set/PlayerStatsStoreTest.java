@@ -0,0 +1,132 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlayerStatsStoreTest {
+
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.createTempFile("player-stats", ".dat");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private PlayerStatsStore open() throws IOException {
+        return new PlayerStatsStore(file.toString());
+    }
+
+    private void appendThree() throws IOException {
+        try (PlayerStatsStore store = open()) {
+            store.append("Ann", true, 3, 1, 4, 4_000_000_000L, 4, 8_000_000);
+            store.append("Bob", false, 1, 0, 2, 1_000_000_000L, 2, 2_000_000);
+            store.append("Ann", false, 2, 2, 3, 2_000_000_000L, 3, 4_000_000);
+        }
+    }
+
+    /**
+     * Overwrites bytes of the file as a crash or another program would.
+     */
+    private void overwrite(long position, byte[] bytes) throws IOException {
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+            raw.seek(position);
+            raw.write(bytes);
+        }
+    }
+
+    private static long record(int index) {
+        return PlayerStatsStore.HEADER_SIZE + (long) index * PlayerStatsStore.RECORD_SIZE;
+    }
+
+    @Test
+    void aggregate_sumsTheRecordsOfEachPlayerAcrossReopens() throws IOException {
+        appendThree();
+        try (PlayerStatsStore store = open()) {
+            assertEquals(3, store.size());
+            Map<String, PlayerStatsStore.PlayerStats> stats = store.aggregate();
+            PlayerStatsStore.PlayerStats ann = stats.get("Ann");
+            assertEquals(2, ann.games);
+            assertEquals(1, ann.wins);
+            assertEquals(5, ann.points);
+            assertEquals(3, ann.penalties);
+            assertEquals(7, ann.claims);
+            assertEquals(1714, ann.averageClaimLatencyMicros()); // 12ms over 7 verdicts
+            assertEquals(857, ann.averageReactionMillis()); // 6s over 7 claims
+            assertEquals("Ann: games=2 wins=1 points=5 penalties=3 claims=7 avg claim latency=1714us avg reaction=857ms\n"
+                    + "Bob: games=1 wins=0 points=1 penalties=0 claims=2 avg claim latency=1000us avg reaction=500ms\n",
+                    store.report());
+        }
+    }
+
+    @Test
+    void open_recoversFromATornRecord() throws IOException {
+        appendThree();
+        overwrite(record(3), "Eve".getBytes()); // the crash came before the checksum was written
+        overwrite(record(1) + PlayerStatsStore.NAME_SIZE, new byte[]{9}); // Bob's points changed under the checksum
+        try (PlayerStatsStore store = open()) {
+            assertEquals(3, store.size()); // the torn record is overwritten by the next append
+            assertFalse(store.aggregate().containsKey("Bob"));
+            store.append("Cid", true, 1, 0, 1, 0, 1, 0);
+        }
+        try (PlayerStatsStore store = open()) {
+            assertEquals(4, store.size());
+            assertEquals(1, store.aggregate().get("Cid").games);
+            assertFalse(store.aggregate().containsKey("Eve"));
+        }
+    }
+
+    @Test
+    void open_rejectsOtherFiles() throws IOException {
+        overwrite(0, "not a statistics file, just some text".getBytes());
+        assertThrows(IOException.class, this::open);
+    }
+
+    @Test
+    void append_isSafeFromManyThreadsAndAcrossSegments() throws Exception {
+        int threads = 4, games = 1500; // 6000 records, more than one segment
+        try (PlayerStatsStore store = open()) {
+            List<Thread> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String name = "a name longer than the thirty one bytes kept " + t;
+                Thread writer = new Thread(() -> {
+                    try {
+                        for (int game = 0; game < games; game++) store.append(name, game % 2 == 0, 1, 0, 1, 0, 1, 0);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                writers.add(writer);
+                writer.start();
+            }
+            for (Thread writer : writers) writer.join();
+            assertEquals(threads * games, store.size());
+        }
+        try (PlayerStatsStore store = open()) {
+            Map<String, PlayerStatsStore.PlayerStats> stats = store.aggregate();
+            assertEquals(1, stats.size()); // the names differ only after the 31 bytes kept
+            PlayerStatsStore.PlayerStats player = stats.values().iterator().next();
+            assertEquals(threads * games, player.games);
+            assertEquals(threads * games / 2, player.wins);
+            assertTrue(stats.containsKey("a name longer than the thirty o"));
+        }
+    }
+}
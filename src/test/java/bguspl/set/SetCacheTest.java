@@ -0,0 +1,69 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SetCacheTest {
+
+    private final Config config = config();
+    private final SetFinder finder = new SetFinder(config);
+
+    private static Config config() {
+        Properties properties = new Properties();
+        properties.put("LogLevel", "OFF");
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setLevel(Level.OFF);
+        return new Config(logger, properties);
+    }
+
+    private static void assertSameSets(List<int[]> expected, List<int[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) assertArrayEquals(expected.get(i), actual.get(i));
+    }
+
+    @Test
+    void find_returnsWhatTheFinderFindsWhateverTheCardOrder() {
+        SetCache cache = new SetCache(finder, config.deckSize, 1024);
+        Random random = new Random(3);
+        List<Integer> deck = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+        for (int table = 0; table < 20; table++) {
+            Collections.shuffle(deck, random);
+            List<Integer> cards = new ArrayList<>(deck.subList(0, 12));
+            List<int[]> all = finder.find(cards, Integer.MAX_VALUE);
+            assertSameSets(finder.find(cards, 1), cache.find(cards, 1)); // a partial entry
+            assertSameSets(all, cache.find(cards, Integer.MAX_VALUE)); // replaced by the complete one
+            Collections.reverse(cards);
+            assertSameSets(all, cache.find(cards, Integer.MAX_VALUE));
+            assertSameSets(finder.find(cards, 2), cache.find(cards, 2));
+            cache.find(cards, 2).forEach(set -> set[0] = -1); // the callers get copies
+        }
+        assertTrue(cache.misses() <= 40); // once per table, twice if it has sets (the first lookup stops at one)
+        assertEquals(100, cache.hits() + cache.misses());
+        assertTrue(cache.hitRate() >= 0.6);
+    }
+
+    @Test
+    void find_evictsTheLeastRecentlyUsedTables() {
+        SetCache cache = new SetCache(finder, config.deckSize, 16); // a single entry per segment
+        List<Integer> first = Collections.singletonList(0);
+        cache.find(first, 1);
+        for (int card = 1; card < config.deckSize; card++) cache.find(Collections.singletonList(card), 1);
+        assertTrue(cache.size() <= 16);
+        assertEquals(config.deckSize - cache.size(), cache.evictions());
+        cache.find(first, 1);
+        assertEquals(config.deckSize + 1, cache.misses());
+    }
+}
@@ -0,0 +1,149 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SetFinderTest {
+
+    private static Config config(int featureSize, int featureCount) {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", String.valueOf(featureSize));
+        properties.put("FeatureCount", String.valueOf(featureCount));
+        properties.put("LogLevel", "OFF");
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setLevel(Level.OFF);
+        return new Config(logger, properties);
+    }
+
+    /**
+     * Tests every combination of cards with Util.testSet.
+     */
+    private static Set<String> bruteForce(UtilImpl util, List<Integer> cards, int k) {
+        Set<String> sets = new TreeSet<>();
+        int n = cards.size();
+        int[] combination = IntStream.range(0, k).toArray();
+        while (k <= n && combination[k - 1] < n) {
+            int[] set = Arrays.stream(combination).map(cards::get).sorted().toArray();
+            if (util.testSet(set)) sets.add(Arrays.toString(set));
+            int t = k - 1;
+            while (t != 0 && combination[t] == n - k + t) --t;
+            combination[t]++;
+            for (int i = t + 1; i < k; i++) combination[i] = combination[i - 1] + 1;
+        }
+        return sets;
+    }
+
+    private static IntStream cardsOf(String set) {
+        return Arrays.stream(set.substring(1, set.length() - 1).split(", ")).mapToInt(Integer::parseInt);
+    }
+
+    private static void assertSameSets(int featureSize, int featureCount, List<Integer> cards) {
+        Config config = config(featureSize, featureCount);
+        UtilImpl util = new UtilImpl(config);
+        Set<String> found = util.findSets(cards, Integer.MAX_VALUE).stream().map(Arrays::toString)
+                .collect(Collectors.toCollection(TreeSet::new));
+        assertEquals(bruteForce(util, cards, featureSize), found);
+    }
+
+    private static List<Integer> deck(int featureSize, int featureCount) {
+        return IntStream.range(0, (int) Math.pow(featureSize, featureCount)).boxed().collect(Collectors.toList());
+    }
+
+    @Test
+    void findSets_wholeDeck_matchesBruteForce() {
+        assertSameSets(3, 4, deck(3, 4));
+        assertSameSets(4, 3, deck(4, 3));
+        assertSameSets(5, 2, deck(5, 2));
+        assertSameSets(2, 3, deck(2, 3));
+    }
+
+    @Test
+    void findSets_randomCards_matchesBruteForce() {
+        Random random = new Random(39);
+        for (int[] shape : new int[][]{{3, 4}, {4, 3}, {5, 3}}) {
+            List<Integer> deck = deck(shape[0], shape[1]);
+            for (int round = 0; round < 20; round++) {
+                Collections.shuffle(deck, random);
+                assertSameSets(shape[0], shape[1], new ArrayList<>(deck.subList(0, 4 + random.nextInt(12))));
+            }
+        }
+    }
+
+    @Test
+    void countSetsWith_tracksRemainingSets() {
+        Random random = new Random(40);
+        for (int[] shape : new int[][]{{3, 4}, {4, 3}, {5, 2}, {2, 4}}) {
+            Config config = config(shape[0], shape[1]);
+            SetFinder finder = new SetFinder(config);
+            List<Integer> remaining = deck(shape[0], shape[1]);
+            boolean[] present = new boolean[config.deckSize];
+            Arrays.fill(present, true);
+            long sets = finder.countDeckSets();
+            assertEquals(finder.find(remaining, Integer.MAX_VALUE).size(), sets);
+            Collections.shuffle(remaining, random);
+            while (!remaining.isEmpty()) {
+                int card = remaining.remove(remaining.size() - 1);
+                sets -= finder.countSetsWith(card, present);
+                present[card] = false;
+                assertEquals(finder.find(remaining, Integer.MAX_VALUE).size(), sets);
+            }
+        }
+    }
+
+    @Test
+    void findCompletion_completesASetOrFindsNone() {
+        Random random = new Random(41);
+        for (int[] shape : new int[][]{{3, 4}, {4, 3}, {2, 4}, {3, 7}}) {
+            Config config = config(shape[0], shape[1]);
+            UtilImpl util = new UtilImpl(config);
+            SetFinder finder = new SetFinder(config);
+            List<Integer> deck = deck(shape[0], shape[1]);
+            for (int round = 0; round < 50; round++) {
+                Collections.shuffle(deck, random);
+                int[] cards = deck.subList(0, 1 + random.nextInt(11)).stream().mapToInt(Integer::intValue).toArray();
+                boolean[] candidates = new boolean[config.deckSize];
+                int end = Math.min(deck.size(), cards.length + 1 + random.nextInt(20));
+                for (int card : deck.subList(cards.length, end)) candidates[card] = true;
+                int completion = finder.findCompletion(cards, card -> candidates[card], random.nextInt(cards.length));
+                List<Integer> withCandidates = Arrays.stream(cards).boxed().collect(Collectors.toList());
+                Set<String> before = bruteForce(util, withCandidates, shape[0]);
+                for (int card = 0; card < config.deckSize; card++) if (candidates[card]) withCandidates.add(card);
+                // a completion exists iff some set uses exactly one candidate (and featureSize - 1 given cards)
+                boolean exists = bruteForce(util, withCandidates, shape[0]).stream()
+                        .anyMatch(set -> !before.contains(set) && cardsOf(set).filter(card -> candidates[card]).count() == 1);
+                assertEquals(exists, completion != -1);
+                if (completion != -1) {
+                    assertTrue(candidates[completion]);
+                    List<Integer> completed = Arrays.stream(cards).boxed().collect(Collectors.toList());
+                    completed.add(completion);
+                    assertTrue(bruteForce(util, completed, shape[0]).stream()
+                            .anyMatch(set -> cardsOf(set).anyMatch(card -> card == completion)));
+                }
+            }
+        }
+    }
+
+    @Test
+    void findSets_stopsAtCount() {
+        UtilImpl util = new UtilImpl(config(3, 4));
+        List<int[]> sets = util.findSets(deck(3, 4), 5);
+        assertEquals(5, sets.size());
+        for (int[] set : sets) assertTrue(util.testSet(set));
+        assertEquals(1080, util.findSets(deck(3, 4), Integer.MAX_VALUE).size());
+    }
+}
@@ -0,0 +1,108 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpectatorFeedTest {
+
+    private SpectatorFeed feed;
+    private final ByteBuffer header = ByteBuffer.allocate(4);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Properties properties = new Properties();
+        properties.put("Rows", "2");
+        properties.put("Columns", "3");
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "70"); // two words of token bits
+        properties.put("LogLevel", "OFF");
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setLevel(Level.OFF);
+        feed = new SpectatorFeed(logger, new Config(logger, properties), 0, null);
+        feed.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        feed.close();
+    }
+
+    private SocketChannel connect(SpectatorClient.View view) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", feed.port()));
+        assertEquals(SpectatorFeed.SNAPSHOT, view.apply(SpectatorClient.readFrame(channel, header)));
+        return channel;
+    }
+
+    /**
+     * Applies frames until the given number of frames was received in total.
+     */
+    private void receive(SocketChannel channel, SpectatorClient.View view, long frames) throws IOException {
+        while (view.frames < frames) view.apply(SpectatorClient.readFrame(channel, header));
+    }
+
+    @Test
+    void viewers_rebuildTheStateFromSnapshotAndDeltas() throws IOException {
+        feed.placeCard(17, 0);
+        feed.placeToken(2, 0);
+        feed.setScore(1, 4);
+
+        SpectatorClient.View first = new SpectatorClient.View();
+        try (SocketChannel firstChannel = connect(first)) {
+            assertEquals(17, first.cards[0]);
+            assertTrue(first.hasToken(2, 0));
+            assertEquals(4, first.scores[1]);
+
+            feed.placeCard(5, 4);
+            feed.placeCard(5, 4); // no change, no delta
+            feed.placeToken(69, 4);
+            feed.removeToken(2, 0);
+            feed.setCountdown(3000, true);
+            receive(firstChannel, first, 5);
+
+            SpectatorClient.View second = new SpectatorClient.View();
+            try (SocketChannel secondChannel = connect(second)) {
+                feed.removeCard(0);
+                feed.removeTokens();
+                feed.announceWinner(new int[]{1, 3});
+                receive(firstChannel, first, 8);
+                receive(secondChannel, second, 4);
+
+                for (SpectatorClient.View view : new SpectatorClient.View[]{first, second}) {
+                    assertArrayEquals(new int[]{-1, -1, -1, -1, 5, -1}, view.cards);
+                    assertFalse(view.hasToken(69, 4));
+                    assertEquals(SpectatorFeed.TIMER_WARN, view.timerMode);
+                    assertTrue(view.timerNow() <= 3000 && view.timerNow() > 2000); // counting down since the reset
+                    assertArrayEquals(new int[]{1, 3}, view.winners);
+                }
+            }
+        }
+    }
+
+    @Test
+    void close_endsTheFeed() throws IOException {
+        SpectatorClient.View view = new SpectatorClient.View();
+        try (SocketChannel channel = connect(view)) {
+            assertNull(view.winners);
+            feed.setScore(0, 1);
+            feed.close();
+            receive(channel, view, 2);
+            assertEquals(1, view.scores[0]);
+            assertNull(SpectatorClient.readFrame(channel, header));
+        }
+    }
+}
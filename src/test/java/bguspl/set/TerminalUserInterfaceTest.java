@@ -0,0 +1,67 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TerminalUserInterfaceTest {
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    private String output() {
+        synchronized (bytes) {
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Waits for the renderer to draw the text and returns what was drawn since the given offset.
+     */
+    private String awaitDrawn(String text, int from) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!output().substring(from).contains(text) && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        return output().substring(from);
+    }
+
+    @Test
+    void frames_rewriteOnlyTheChangedCells() throws InterruptedException {
+        Properties properties = new Properties();
+        properties.put("Rows", "2");
+        properties.put("Columns", "2");
+        properties.put("FeatureCount", "3");
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "2");
+        properties.put("PlayerNames", "Ann,Bob");
+        properties.put("LogLevel", "OFF");
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setLevel(Level.OFF);
+        Config config = new Config(logger, properties);
+        TerminalUserInterface ui = new TerminalUserInterface(config, new UtilImpl(config),
+                new PrintStream(bytes, true));
+
+        ui.placeCard(5, 3); // features 0, 1, 2
+        ui.placeToken(1, 3);
+        String first = awaitDrawn(" 2 ", 0);
+        assertTrue(first.contains("\u001b[3;9H[012]"), first);
+
+        int drawn = output().length();
+        ui.setScore(0, 4);
+        ui.setFreeze(1, 2000);
+        String second = awaitDrawn("Bob: 0 (frozen 2s)", drawn);
+        assertTrue(second.contains("Ann: 4"), second);
+        assertFalse(second.contains("[012]"), second);
+
+        ui.announceWinner(new int[]{0});
+        ui.dispose();
+        assertTrue(output().contains("THE WINNER IS: Ann!!!"));
+        assertTrue(output().endsWith("\u001b[?25h"));
+    }
+}
@@ -0,0 +1,163 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class UserInterfaceFanOutTest {
+
+    private final Metrics metrics = new Metrics(true);
+    private final UserInterfaceFanOut fanOut = new UserInterfaceFanOut(quietLogger(), metrics);
+
+    private static Logger quietLogger() {
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setLevel(Level.OFF);
+        return logger;
+    }
+
+    @AfterEach
+    void tearDown() {
+        fanOut.close();
+    }
+
+    /**
+     * Records the cards placed, once released (ignores everything else).
+     */
+    private static class SlowSink extends LazyUserInterface {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Integer> cards = new ArrayList<>();
+
+        SlowSink() {
+            attach(null);
+        }
+
+        @Override
+        public void placeCard(int card, int slot) {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+            synchronized (cards) {
+                cards.add(card);
+            }
+        }
+    }
+
+    @Test
+    void slowSink_fallsBehindWithoutSlowingTheCallerOrOtherSinks() throws InterruptedException {
+        SlowSink slow = new SlowSink();
+        UserInterface fast = mock(UserInterface.class);
+        fanOut.addSink("slow", slow, UserInterfaceFanOut.Overflow.DROP_TIMERS, 3)
+                .addSink("fast", fast, UserInterfaceFanOut.Overflow.DROP, 64);
+
+        fanOut.placeCard(0, 0);
+        slow.started.await();
+        for (int card = 1; card < 4; card++) fanOut.placeCard(card, card); // fills the slow sink's queue
+        for (int i = 0; i < 10; i++) fanOut.setFreeze(1, 1000 * i); // dropped by the slow sink only
+        assertEquals(10, metrics.counter("ui.slow.dropped").sum());
+
+        slow.release.countDown();
+        fanOut.dispose();
+        assertEquals(Arrays.asList(0, 1, 2, 3), slow.cards);
+        verify(fast).placeCard(3, 3);
+        verify(fast).setFreeze(1, 9000);
+        verify(fast).dispose();
+        assertEquals(0, metrics.counter("ui.fast.dropped").sum());
+    }
+
+    /**
+     * Shows the cards, tokens and scores, but hangs on its first call until released.
+     */
+    private static class StuckDisplay extends LazyUserInterface {
+        final CountDownLatch stuck = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Map<Integer, Integer> cards = new HashMap<>();
+        final Set<String> tokens = new HashSet<>();
+        final Map<Integer, Integer> scores = new HashMap<>();
+
+        StuckDisplay() {
+            attach(null);
+        }
+
+        private void hang() {
+            stuck.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+        }
+
+        @Override
+        public void placeCard(int card, int slot) {
+            hang();
+            cards.put(slot, card);
+        }
+
+        @Override
+        public void removeCard(int slot) {
+            cards.remove(slot);
+        }
+
+        @Override
+        public void placeToken(int player, int slot) {
+            tokens.add(player + "@" + slot);
+        }
+
+        @Override
+        public void removeTokens() {
+            tokens.clear();
+        }
+
+        @Override
+        public void setScore(int player, int score) {
+            scores.put(player, score);
+        }
+    }
+
+    @Test
+    void resyncSink_neverBlocksTheCallerAndCatchesUpWithTheState() throws InterruptedException {
+        StuckDisplay display = new StuckDisplay();
+        fanOut.addSink("display", display, UserInterfaceFanOut.Overflow.RESYNC, 3);
+
+        fanOut.placeCard(0, 0);
+        display.stuck.await();
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> { // the display hangs all along
+            for (int turn = 0; turn < 1000; turn++) {
+                for (int slot = 0; slot < 12; slot++) fanOut.placeCard(turn + slot, slot);
+                fanOut.removeCard(5);
+                fanOut.removeTokens();
+                fanOut.placeToken(1, turn % 12);
+                fanOut.setFreeze(1, turn);
+                fanOut.setScore(1, turn);
+            }
+        });
+        assertTrue(metrics.counter("ui.display.dropped").sum() > 0);
+
+        display.release.countDown();
+        fanOut.dispose();
+        Map<Integer, Integer> cards = new HashMap<>();
+        for (int slot = 0; slot < 12; slot++) if (slot != 5) cards.put(slot, 999 + slot);
+        assertEquals(cards, display.cards);
+        assertEquals(new HashSet<>(Arrays.asList("1@3")), display.tokens);
+        assertEquals(999, display.scores.get(1));
+    }
+}
@@ -2,8 +2,10 @@ package bguspl.set.ex;
 
 import bguspl.set.Config;
 import bguspl.set.Env;
+import bguspl.set.Metrics;
 import bguspl.set.UserInterface;
 import bguspl.set.Util;
+import bguspl.set.UtilImpl;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,6 +17,7 @@ import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
@@ -65,10 +68,8 @@ class DealerTest {
     }
 
     private void fillAllSlots() {
-        for (int i = 0; i < tableMock.slotToCard.length; ++i) {
-            tableMock.slotToCard[i] = i;
-            tableMock.cardToSlot[i] = i;
-        }
+        for (int i = 0; i < tableMock.slotToCard.length; ++i)
+            tableMock.placeCard(i, i);
     }
 
     private void InsertSlotToPlayer1()
@@ -109,5 +110,82 @@ class DealerTest {
          // check that the score was increased correctly
          assertArrayEquals(expectedSet, output);
     }
- 
-}
\ No newline at end of file
+
+    /**
+     * A game of 9 cards (2 features) on a 2x2 table.
+     */
+    private static Env env(String turnTimeoutSeconds, Metrics metrics) {
+        Properties properties = new Properties();
+        properties.put("Rows", "2");
+        properties.put("Columns", "2");
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "2");
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "0");
+        properties.put("TurnTimeoutSeconds", turnTimeoutSeconds);
+        properties.put("TableDelaySeconds", "0");
+        properties.put("DeckSeed", "7");
+        properties.put("LogLevel", "OFF");
+        Logger logger = new TableTest.MockLogger();
+        Config config = new Config(logger, properties);
+        return new Env(logger, config, new TableTest.MockUserInterface(), new UtilImpl(config), metrics);
+    }
+
+    /**
+     * Resumes a game from a table without a legal set, with a minute left in the turn.
+     */
+    private static Dealer resume(Env env, long remainingSets, int[] deck) {
+        Dealer dealer = new Dealer(env, new Table(env), new Player[0]);
+        // cards 0, 1, 3 and 4 hold no set, 8 completes one with 0 and 4
+        dealer.restore(new GameCheckpoint(0, 60000, remainingSets, deck, new int[]{0, 1, 3, 4}, new int[0],
+                new long[0]));
+        return dealer;
+    }
+
+    private static Dealer resumeUntimed(long remainingSets, int[] deck, Metrics metrics) {
+        return resume(env("0", metrics), remainingSets, deck);
+    }
+
+    /**
+     * Runs the dealer until its first reshuffle (or a while), then stops it.
+     *
+     * @return - the number of reshuffles before it was stopped.
+     */
+    private static long reshufflesOf(Dealer dealer, Metrics metrics) throws InterruptedException {
+        Thread thread = new Thread(dealer, "dealer");
+        thread.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (metrics.counter("dealer.reshuffles").sum() == 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        Thread.sleep(100);
+        long reshuffles = metrics.counter("dealer.reshuffles").sum(); // the new table holds a set, once is enough
+        dealer.terminate();
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+        return reshuffles;
+    }
+
+    @Test
+    void run_reshufflesAResumedTableWithoutASet() throws InterruptedException {
+        Metrics metrics = new Metrics(true);
+        assertEquals(1, reshufflesOf(resumeUntimed(1, new int[]{8}, metrics), metrics));
+    }
+
+    @Test
+    void run_reshufflesATableWithoutASetWhenTheTurnsBecomeUntimed() throws InterruptedException {
+        Metrics metrics = new Metrics(true);
+        Env env = env("60", metrics);
+        Dealer dealer = resume(env, 1, new int[]{8});
+        env.stageConfig(env("0", metrics).config); // reloaded before the first turn
+        assertEquals(1, reshufflesOf(dealer, metrics));
+    }
+
+    @Test
+    void run_endsAResumedGameWithoutSets() throws InterruptedException {
+        Dealer dealer = resumeUntimed(0, new int[0], new Metrics(true));
+        Thread thread = new Thread(dealer, "dealer");
+        thread.start();
+        thread.join(5000); // nobody terminates this game, the dealer has to notice it is over
+        assertFalse(thread.isAlive());
+    }
+}
@@ -0,0 +1,58 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DrawPileTest {
+
+    private static int[] drawAll(DrawPile pile) {
+        int[] drawn = new int[pile.size()];
+        for (int i = 0; i < drawn.length; i++) drawn[i] = pile.draw();
+        assertTrue(pile.isEmpty());
+        return drawn;
+    }
+
+    @Test
+    void draw_dealsEveryCardOnceInASeededOrder() {
+        int[] first = drawAll(new DrawPile(81, new SplittableRandom(7)));
+        assertArrayEquals(first, drawAll(new DrawPile(81, new SplittableRandom(7))));
+        assertNotEquals(Arrays.toString(first), Arrays.toString(drawAll(new DrawPile(81, new SplittableRandom(8)))));
+
+        int[] sorted = first.clone();
+        Arrays.sort(sorted);
+        for (int card = 0; card < sorted.length; card++) assertEquals(card, sorted[card]);
+    }
+
+    @Test
+    void removeAndAdd_keepThePoolConsistent() {
+        DrawPile pile = new DrawPile(9, new SplittableRandom(1));
+        assertTrue(pile.remove(4));
+        assertFalse(pile.remove(4));
+        assertTrue(pile.remove(8));
+        assertEquals(7, pile.size());
+        assertFalse(pile.contains(4));
+        assertTrue(pile.add(4));
+        assertFalse(pile.add(4));
+        assertTrue(pile.contains(4));
+
+        int[] cards = pile.toArray();
+        Arrays.sort(cards);
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5, 6, 7}, cards);
+        int[] drawn = drawAll(pile);
+        Arrays.sort(drawn);
+        assertArrayEquals(cards, drawn);
+
+        pile.add(3);
+        pile.clear();
+        assertTrue(pile.isEmpty());
+        assertFalse(pile.contains(3));
+    }
+}
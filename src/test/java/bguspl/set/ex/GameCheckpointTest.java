@@ -0,0 +1,98 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class GameCheckpointTest {
+
+    @TempDir
+    Path dir;
+
+    private static Config config(String players) {
+        Properties properties = new Properties();
+        properties.put("Rows", "2");
+        properties.put("Columns", "2");
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", players);
+        properties.put("LogLevel", "OFF");
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setLevel(Level.OFF);
+        return new Config(logger, properties);
+    }
+
+    private static GameCheckpoint checkpoint() {
+        return new GameCheckpoint(1234, 4500, 17, new int[]{80, 3, 0, 41}, new int[]{5, -1, 79, 12},
+                new int[]{2, 0}, new long[]{0, 3000});
+    }
+
+    @Test
+    void write_thenRead_restoresTheSnapshot() throws IOException {
+        Config config = config("2");
+        Path file = dir.resolve("nested").resolve("game.snap");
+        checkpoint().write(file, config);
+        checkpoint().write(file, config); // replaces the previous snapshot
+        assertFalse(Files.exists(dir.resolve("nested").resolve("game.snap.tmp")));
+
+        GameCheckpoint read = GameCheckpoint.read(file, config);
+        assertEquals(1234, read.savedAtMillis);
+        assertEquals(4500, read.turnMillis);
+        assertEquals(17, read.remainingSets);
+        assertArrayEquals(new int[]{80, 3, 0, 41}, read.deck);
+        assertArrayEquals(new int[]{5, -1, 79, 12}, read.slots);
+        assertArrayEquals(new int[]{2, 0}, read.scores);
+        assertArrayEquals(new long[]{0, 3000}, read.freezes);
+    }
+
+    @Test
+    void read_rejectsCorruptAndMismatchedSnapshots() throws IOException {
+        Path file = dir.resolve("game.snap");
+        checkpoint().write(file, config("2"));
+        assertThrows(IOException.class, () -> GameCheckpoint.read(file, config("3")));
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> GameCheckpoint.read(file, config("2")));
+
+        Files.write(file, new byte[]{1, 2, 3});
+        assertThrows(IOException.class, () -> GameCheckpoint.read(file, config("2")));
+    }
+
+    @Test
+    void read_rejectsSnapshotsWithCardsOutOfTheGame() throws IOException {
+        Config config = config("2");
+        Path file = dir.resolve("game.snap");
+        int[][][] cards = {
+                {{80, 3, 0, 41}, {5, -1, 81, 12}}, // no such card
+                {{80, -1, 0, 41}, {5, -1, 79, 12}}, // an empty slot in the deck
+                {{80, 3, 0, 41}, {5, -1, 3, 12}}, // both in the deck and on the table
+                {{80, 3, 80, 41}, {5, -1, 79, 12}}, // twice in the deck
+                {new int[config.deckSize + 1], {-1, -1, -1, -1}}, // more cards than the deck has
+        };
+        for (int[][] game : cards) {
+            new GameCheckpoint(1234, 4500, 17, game[0], game[1], new int[]{2, 0}, new long[]{0, 3000})
+                    .write(file, config);
+            assertThrows(IOException.class, () -> GameCheckpoint.read(file, config));
+        }
+        new GameCheckpoint(1234, 4500, -1, new int[]{80}, new int[]{5, -1, 79, 12}, new int[]{2, 0},
+                new long[]{0, 3000}).write(file, config);
+        assertThrows(IOException.class, () -> GameCheckpoint.read(file, config));
+
+        new GameCheckpoint(1234, 4500, 0, new int[0], new int[]{-1, -1, -1, -1}, new int[]{2, 0},
+                new long[]{0, 3000}).write(file, config);
+        assertArrayEquals(new int[0], GameCheckpoint.read(file, config).deck);
+    }
+}
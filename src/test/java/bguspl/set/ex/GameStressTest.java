@@ -0,0 +1,161 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.Metrics;
+import bguspl.set.UserInterfaceDecorator;
+import bguspl.set.Util;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Plays many short games between computer players with seeded random spins injected into every Util and
+ * UserInterface call of the dealer and player threads (so around their handshakes, without hooks in the game code),
+ * and checks the game invariants after each one.
+ * <p>
+ * System properties: stress.games (number of games), stress.seed (the seed of the first game, game i uses seed + i,
+ * so a failing game can be replayed alone) and stress.boundMillis (the time a game must end in).
+ */
+class GameStressTest {
+
+    private static final int GAMES = Integer.getInteger("stress.games", 12);
+    private static final long SEED = Long.getLong("stress.seed", 1);
+    private static final long BOUND_MILLIS = Long.getLong("stress.boundMillis", 20000);
+
+    private final List<Throwable> uncaught = new ArrayList<>();
+
+    @Test
+    void games_keepInvariants() throws InterruptedException {
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, e) -> {
+            synchronized (uncaught) {
+                uncaught.add(e);
+            }
+        });
+        try {
+            for (int game = 0; game < GAMES; game++)
+                playGame(SEED + game);
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(previous);
+        }
+    }
+
+    private void playGame(long seed) throws InterruptedException {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "2");
+        properties.put("Rows", "2");
+        properties.put("Columns", "3");
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "3");
+        properties.put("BotStrategies", seed % 2 == 0 ? "hint,random,random" : "random,hint,hint");
+        properties.put("TurnTimeoutSeconds", "0.2");
+        properties.put("TurnTimeoutWarningSeconds", "0");
+        properties.put("PointFreezeSeconds", "0");
+        properties.put("PenaltyFreezeSeconds", "0");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("EndGamePauseSeconds", "0");
+        properties.put("RandomSpinMin", "0");
+        properties.put("RandomSpinMax", "3");
+        properties.put("RandomSpinSeed", String.valueOf(seed));
+        Logger logger = new TableTest.MockLogger();
+        logger.setLevel(Level.OFF);
+        Config config = new Config(logger, properties);
+        Metrics metrics = new Metrics(true);
+        Util util = new SpinningUtil(config);
+        Env env = new Env(logger, config, new UserInterfaceDecorator(logger, util, new TableTest.MockUserInterface()),
+                util, metrics);
+
+        Player[] players = new Player[config.players];
+        Table table = new Table(env);
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, false);
+
+        Thread dealerThread = new Thread(dealer, "dealer-stress-" + seed);
+        dealerThread.start();
+        dealerThread.join(BOUND_MILLIS);
+        if (dealerThread.isAlive()) {
+            String threads = dumpGameThreads();
+            dealer.terminate();
+            fail("game " + seed + " did not end within " + BOUND_MILLIS + "ms\n" + threads + metrics.dump());
+        }
+
+        synchronized (uncaught) {
+            assertTrue(uncaught.isEmpty(), "game " + seed + " threw " + uncaught);
+        }
+        assertTrue(table.isConsistent(), "game " + seed + ": slotToCard and cardToSlot disagree");
+        assertEquals(0, table.countCards(), "game " + seed + ": cards left on the table");
+        int points = 0;
+        for (Player player : players) points += player.score();
+        assertEquals(config.deckSize, dealer.deck.size() + config.featureSize * points,
+                "game " + seed + ": cards were lost or duplicated");
+        long verdicts = metrics.counter("dealer.claims.good").sum() + metrics.counter("dealer.claims.bad").sum()
+                + metrics.counter("dealer.claims.stale").sum() + metrics.counter("dealer.claims.released").sum();
+        assertEquals(metrics.counter("player.claims").sum(), verdicts, "game " + seed + ": claims were lost");
+        assertEquals(points, metrics.counter("dealer.claims.good").sum(), "game " + seed + ": points without a set");
+        for (Thread thread : Thread.getAllStackTraces().keySet())
+            assertFalse(isGameThread(thread) && thread.isAlive(), "game " + seed + ": " + thread.getName() + " is still alive");
+    }
+
+    /**
+     * Spins before every utility call.
+     */
+    private static class SpinningUtil extends UtilImpl {
+
+        SpinningUtil(Config config) {
+            super(config);
+        }
+
+        @Override
+        public int[] cardToFeatures(int card) {
+            spin();
+            return super.cardToFeatures(card);
+        }
+
+        @Override
+        public int[][] cardsToFeatures(int[] cards) {
+            spin();
+            return super.cardsToFeatures(cards);
+        }
+
+        @Override
+        public boolean testSet(int[] cards) {
+            spin();
+            return super.testSet(cards);
+        }
+
+        @Override
+        public List<int[]> findSets(List<Integer> deck, int count) {
+            spin();
+            return super.findSets(deck, count);
+        }
+    }
+
+    private static boolean isGameThread(Thread thread) {
+        return thread.getName().startsWith("player-") || thread.getName().startsWith("computer-");
+    }
+
+    private static String dumpGameThreads() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Thread, StackTraceElement[]> entry : Thread.getAllStackTraces().entrySet()) {
+            Thread thread = entry.getKey();
+            if (!isGameThread(thread) && !thread.getName().startsWith("dealer-")) continue;
+            sb.append('"').append(thread.getName()).append("\" ").append(thread.getState()).append('\n');
+            for (StackTraceElement frame : entry.getValue()) sb.append("    at ").append(frame).append('\n');
+        }
+        return sb.toString();
+    }
+}
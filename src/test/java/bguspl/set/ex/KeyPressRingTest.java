@@ -0,0 +1,76 @@
+package bguspl.set.ex;
+
+import bguspl.set.Metrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyPressRingTest {
+
+    private final Metrics metrics = new Metrics(true);
+    private final Metrics.Counter dropped = metrics.counter("player.keys.dropped");
+    private final Metrics.Counter coalesced = metrics.counter("player.keys.coalesced");
+
+    @Test
+    void drain_skipsTogglePairs() {
+        KeyPressRing ring = new KeyPressRing(3, dropped, coalesced);
+        assertTrue(ring.offer(4, 1, false));
+        assertTrue(ring.offer(4, 2, false));
+        assertTrue(ring.offer(7, 3, false));
+        assertFalse(ring.offer(8, 4, false));
+        assertEquals(1, dropped.sum());
+
+        List<Integer> slots = new ArrayList<>();
+        assertEquals(3, ring.drain(0, (slot, nanos) -> slots.add(slot)));
+        assertEquals(Arrays.asList(7), slots);
+        assertEquals(2, coalesced.sum());
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    void drain_discardsOldPressesBeforeSkippingTogglePairs() {
+        KeyPressRing ring = new KeyPressRing(4, dropped, coalesced);
+        ring.offer(4, 1, false); // made during a freeze
+        ring.offer(4, 5, false);
+        ring.offer(7, 6, false);
+        ring.offer(7, 7, false);
+
+        List<Integer> slots = new ArrayList<>();
+        assertEquals(4, ring.drain(3, (slot, nanos) -> slots.add(slot)));
+        assertEquals(Arrays.asList(4), slots);
+        assertEquals(2, coalesced.sum());
+    }
+
+    @Test
+    void offer_blocksUntilDrainedOrClosed() throws InterruptedException {
+        KeyPressRing ring = new KeyPressRing(1, dropped, coalesced);
+        ring.setOpen(true);
+        assertTrue(ring.offer(0, 1, true));
+        AtomicBoolean second = new AtomicBoolean();
+        Thread producer = new Thread(() -> second.set(ring.offer(1, 2, true)));
+        producer.start();
+        producer.join(100);
+        assertTrue(producer.isAlive()); // the ring is full and open
+
+        List<Integer> slots = new ArrayList<>();
+        ring.drain(0, (slot, nanos) -> slots.add(slot));
+        producer.join(5000);
+        assertTrue(second.get());
+
+        // a closed ring drops instead of blocking
+        Thread third = new Thread(() -> second.set(ring.offer(2, 3, true)));
+        third.start();
+        ring.setOpen(false);
+        third.join(5000);
+        assertFalse(third.isAlive());
+        assertFalse(second.get());
+        assertEquals(Arrays.asList(0), slots);
+    }
+}
@@ -2,8 +2,10 @@ package bguspl.set.ex;
 
 import bguspl.set.Config;
 import bguspl.set.Env;
+import bguspl.set.Metrics;
 import bguspl.set.UserInterface;
 import bguspl.set.Util;
+import bguspl.set.UtilImpl;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -11,12 +13,20 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Logger;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -84,6 +94,24 @@ class PlayerTest {
         assertEquals(expectedPenaltyState, player.getWasPen());
     }
 
+    @Test
+    void keyEvent_queuesUpToFeatureSizePresses()
+    {
+        Config config = new Config(logger, (String) null);
+        Player human = new Player(new Env(logger, config, ui, util), dealer, table, 1, true);
+
+        // the keyboard only queues the presses, the player thread applies them
+        for (int slot = 0; slot < config.featureSize; slot++)
+            assertTrue(human.keyEvent(slot, System.nanoTime()));
+        verifyNoInteractions(table, ui);
+
+        // nobody drains the presses, so the queue is full and drops presses instead of blocking
+        assertFalse(human.keyEvent(config.featureSize, System.nanoTime()));
+
+        // only the AI thread presses the keys of a computer player
+        assertFalse(player.keyEvent(0, System.nanoTime()));
+    }
+
     @Test
     void terminate() {
 
@@ -96,5 +124,104 @@ class PlayerTest {
          // check that the score was increased correctly
          assertEquals(expectedTerminate, player.getTerminate());
     }
- 
-}
\ No newline at end of file
+
+    /**
+     * A table that holds the first call of the AI thread (tokenSlots) and of the player thread (countTokens) until
+     * the test lets them go, so the key presses can be lined up against the player thread.
+     */
+    private static class GatedTable extends Table {
+
+        final CountDownLatch aiGate = new CountDownLatch(1);
+        final CountDownLatch playerGate = new CountDownLatch(1);
+        final CountDownLatch playerAtGate = new CountDownLatch(1);
+        private volatile boolean aiPassed, playerPassed;
+
+        GatedTable(Env env) {
+            super(env);
+        }
+
+        @Override
+        public int[] tokenSlots(int player) {
+            if (!aiPassed && Thread.currentThread().getName().startsWith("computer-")) {
+                aiPassed = true;
+                await(aiGate);
+            }
+            return super.tokenSlots(player);
+        }
+
+        @Override
+        public int countTokens(int player) {
+            if (!playerPassed && Thread.currentThread().getName().startsWith("player-")) {
+                playerPassed = true;
+                playerAtGate.countDown();
+                await(playerGate);
+            }
+            return super.countTokens(player);
+        }
+
+        private static void await(CountDownLatch gate) {
+            try {
+                gate.await();
+            } catch (InterruptedException ignored) {}
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    void computerPlayer_claimsAfterItsFullKeyQueueClosesMidPress() throws InterruptedException
+    {
+        Properties properties = new Properties();
+        properties.put("Rows", "2");
+        properties.put("Columns", "2");
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "2");
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "1");
+        properties.put("BotStrategies", "hint");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("LogLevel", "OFF");
+        Logger silent = new TableTest.MockLogger();
+        Config config = new Config(silent, properties);
+        Metrics metrics = new Metrics(true);
+        Env env = new Env(silent, config, new TableTest.MockUserInterface(), new UtilImpl(config), metrics);
+        GatedTable gated = new GatedTable(env);
+        Player[] players = new Player[1];
+        Dealer game = new Dealer(env, gated, players);
+        Player bot = players[0] = new Player(env, game, gated, 0, false);
+        for (int card = 0; card < 4; card++)
+            gated.placeCard(card, card); // cards 0, 1 and 2 are the only set
+        gated.placeToken(0, 3); // the AI takes this choice back first: 4 presses for a queue of 3
+
+        Thread thread = new Thread(bot, "player-0");
+        thread.start();
+        // the player thread opened its queue and is held before draining it
+        assertTrue(gated.playerAtGate.await(5, TimeUnit.SECONDS));
+        gated.aiGate.countDown();
+        awaitTrue(() -> bot.aiThread != null && LockSupport.getBlocker(bot.aiThread) instanceof KeyPressRing);
+
+        // a reshuffle starts while the AI waits for room: the queue closes and the press is dropped
+        bot.isFree.set(false);
+        bot.wasShuffled.set(true);
+        bot.tableReady.set(false);
+        gated.playerGate.countDown();
+        awaitTrue(() -> metrics.counter("player.keys.dropped").sum() == 1);
+
+        synchronized (bot.tableReady) {
+            bot.tableReady.set(true);
+            bot.tableReady.notifyAll();
+        }
+        awaitTrue(() -> game.setSem.Sets.contains(0));
+        assertArrayEquals(new int[]{0, 1, 2}, gated.tokenSlots(0));
+
+        bot.terminate();
+        game.terminateThreads();
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+    }
+}
@@ -11,6 +11,7 @@ import java.util.List;
 import java.util.Properties;
 import java.util.logging.Logger;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 class TableTest {
@@ -40,19 +41,15 @@ class TableTest {
     }
 
     private int fillSomeSlots() {
-        slotToCard[1] = 3;
-        slotToCard[2] = 5;
-        cardToSlot[3] = 1;
-        cardToSlot[5] = 2;
+        table.placeCard(3, 1);
+        table.placeCard(5, 2);
 
         return 2;
     }
 
     private void fillAllSlots() {
-        for (int i = 0; i < slotToCard.length; ++i) {
-            slotToCard[i] = i;
-            cardToSlot[i] = i;
-        }
+        for (int i = 0; i < slotToCard.length; ++i)
+            table.placeCard(i, i);
     }
 
     private void placeSomeCardsAndAssert() throws InterruptedException {
@@ -114,6 +111,77 @@ class TableTest {
         assertEquals(slotToCard.length-1, table.countCards());
     }
 
+    @Test
+    void nextOccupiedSlot_SomeSlotsAreFilled() {
+
+        fillSomeSlots();
+        assertEquals(1, table.nextOccupiedSlot(0));
+        assertEquals(2, table.nextOccupiedSlot(2));
+        assertEquals(-1, table.nextOccupiedSlot(3));
+    }
+
+    @Test
+    void nextEmptySlot_SomeSlotsAreFilled() {
+
+        fillSomeSlots();
+        assertEquals(0, table.nextEmptySlot(0));
+        assertEquals(3, table.nextEmptySlot(1));
+        assertEquals(-1, table.nextEmptySlot(slotToCard.length));
+    }
+
+    @Test
+    void nextEmptySlot_AllSlotsAreFilled() {
+
+        fillAllSlots();
+        assertEquals(-1, table.nextEmptySlot(0));
+        table.removeCard(2);
+        assertEquals(2, table.nextEmptySlot(0));
+        assertEquals(false, table.isOccupied(2));
+    }
+
+    @Test
+    void slotVersion_ChangesWithTheCardInTheSlot() {
+
+        long version = table.slotVersion(2);
+        table.placeCard(8, 2);
+        assertEquals(false, table.isCurrent(2, version));
+
+        version = table.slotVersion(2);
+        table.placeToken(0, 2);
+        assertEquals(true, table.isCurrent(2, version));
+
+        table.removeCard(2);
+        assertEquals(false, table.isCurrent(2, version));
+    }
+
+    @Test
+    void placeToken_CountAndListTheTokens() {
+
+        fillAllSlots();
+        table.placeToken(0, 3);
+        table.placeToken(0, 1);
+        table.placeToken(1, 1);
+
+        assertEquals(2, table.countTokens(0));
+        assertArrayEquals(new int[]{1, 3}, table.tokenSlots(0));
+        assertEquals(true, table.hasTokenOn(1, table.slotMask(new int[]{0, 1})));
+        assertEquals(false, table.hasTokenOn(1, table.slotMask(new int[]{2, 3})));
+    }
+
+    @Test
+    void removeCard_RemovesTheTokensOnTheSlot() {
+
+        fillAllSlots();
+        table.placeToken(0, 1);
+        table.placeToken(0, 2);
+        table.placeToken(1, 1);
+        table.removeCard(1);
+
+        assertArrayEquals(new int[]{2}, table.tokenSlots(0));
+        assertEquals(0, table.countTokens(1));
+        assertEquals(false, table.hasToken(1, 1));
+    }
+
     static class MockUserInterface implements UserInterface {
         @Override
         public void dispose() {}
@@ -0,0 +1,91 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.Metrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WatchdogTest {
+
+    private Metrics metrics;
+    private Player[] players;
+    private Watchdog watchdog;
+    private Thread stuck;
+
+    @BeforeEach
+    void setUp() {
+        Properties properties = new Properties();
+        properties.put("Rows", "2");
+        properties.put("Columns", "2");
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "4");
+        properties.put("HumanPlayers", "1");
+        properties.put("ComputerPlayers", "0");
+        properties.put("WatchdogSeconds", "1");
+        properties.put("WatchdogRecover", "True");
+        Logger logger = new TableTest.MockLogger();
+        logger.setLevel(Level.OFF);
+        Config config = new Config(logger, properties);
+        metrics = new Metrics(true);
+        Env env = new Env(logger, config, new TableTest.MockUserInterface(), new TableTest.MockUtil(), metrics);
+        Table table = new Table(env);
+        players = new Player[1];
+        Dealer dealer = new Dealer(env, table, players);
+        players[0] = new Player(env, dealer, table, 0, true);
+        watchdog = new Watchdog(env, dealer, table, players, new Thread(() -> {})); // an idle (never started) dealer
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        stuck.interrupt();
+        stuck.join();
+    }
+
+    private void startStuck(Runnable waiting) {
+        stuck = new Thread(waiting, "player-stuck");
+        stuck.setDaemon(true);
+        stuck.start();
+        while (stuck.getState() != Thread.State.WAITING) Thread.yield();
+        players[0].playerThread = stuck;
+    }
+
+    @Test
+    void check_reportsLostHandshakeOnce() {
+        startStuck(() -> {
+            synchronized (players[0].wasChecked) {
+                try {
+                    players[0].wasChecked.wait();
+                } catch (InterruptedException ignored) {}
+            }
+        });
+        long now = System.nanoTime();
+        watchdog.check(now);
+        watchdog.check(now + 500_000_000L);
+        assertEquals(0, metrics.counter("watchdog.stalls").sum());
+
+        watchdog.check(now + 2_000_000_000L);
+        watchdog.check(now + 3_000_000_000L);
+        assertEquals(1, metrics.counter("watchdog.stalls").sum());
+        assertEquals(1, metrics.counter("watchdog.recoveries").sum());
+        assertTrue(watchdog.diagnostic(now + 3_000_000_000L).contains("player 1: WAITING on wasChecked for 3000ms"));
+    }
+
+    @Test
+    void check_ignoresHumanWaitingForKeys() {
+        startStuck(() -> LockSupport.park(players[0]));
+        long now = System.nanoTime();
+        watchdog.check(now);
+        watchdog.check(now + 60_000_000_000L);
+        assertEquals(0, metrics.counter("watchdog.stalls").sum());
+    }
+}